@@ -74,6 +74,15 @@ public class ContextCallStackAnalysis extends ProfilingCallGraphAnalysisModule {
 
     @Override
     protected @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(@NonNull ITmfEvent event) {
+        Pair<ICallStackElement, long[]> stack = getProfiledStack(event);
+        if (stack == null) {
+            return null;
+        }
+        return new Pair<>(stack.getFirst(), getCallSite(stack.getFirst(), stack.getSecond(), event.getTimestamp().getValue()));
+    }
+
+    @Override
+    protected @Nullable Pair<ICallStackElement, long[]> getProfiledStack(@NonNull ITmfEvent event) {
         Map<String, Collection<Object>> callStack = getCallStack(event);
         if (callStack.isEmpty()) {
             return null;
@@ -91,7 +100,7 @@ public class ContextCallStackAnalysis extends ProfilingCallGraphAnalysisModule {
         if (kernelCs.size() + userCs.size() == 0) {
             long[] stack = new long[1];
             stack[0] = 0;
-            return new Pair<>(element, getCallSite(element, stack, event.getTimestamp().getValue()));
+            return new Pair<>(element, stack);
         }
         long[] stack = new long[userCs.size() + kernelCs.size()];
         int i = 0;
@@ -103,7 +112,7 @@ public class ContextCallStackAnalysis extends ProfilingCallGraphAnalysisModule {
             stack[i] = (call instanceof Long) ? (long) call : UNDEFINED_SYMBOL;
             i++;
         }
-        return new Pair<>(element, getCallSite(element, stack, event.getTimestamp().getValue()));
+        return new Pair<>(element, stack);
 
     }
 
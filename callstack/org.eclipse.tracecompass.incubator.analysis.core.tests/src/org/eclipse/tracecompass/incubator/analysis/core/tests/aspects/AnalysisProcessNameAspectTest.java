@@ -13,9 +13,11 @@ package org.eclipse.tracecompass.incubator.analysis.core.tests.aspects;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
+import java.util.Collections;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -25,8 +27,13 @@ import org.eclipse.tracecompass.analysis.os.linux.core.tid.TidAnalysisModule;
 import org.eclipse.tracecompass.incubator.analysis.core.aspects.AnalysisProcessNameAspect;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.model.CompositeHostModel;
+import org.eclipse.tracecompass.internal.analysis.os.linux.core.kernel.Attributes;
 import org.eclipse.tracecompass.lttng2.kernel.core.trace.LttngKernelTrace;
 import org.eclipse.tracecompass.lttng2.lttng.kernel.core.tests.shared.LttngKernelTestTraceUtils;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
@@ -34,6 +41,7 @@ import org.eclipse.tracecompass.tmf.core.event.ITmfEventType;
 import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.TmfEventType;
 import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceClosedSignal;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
@@ -54,6 +62,7 @@ import com.google.common.collect.ImmutableList;
  * @author Pierre-Yves Lajoie
  * @author Eva Terriault
  */
+@SuppressWarnings("restriction")
 public class AnalysisProcessNameAspectTest {
 
     /*
@@ -114,6 +123,62 @@ public class AnalysisProcessNameAspectTest {
         assertEquals(execNameProcessCpu1, processExecName);
     }
 
+    /**
+     * Test that the process IDs are cached for the duration of the state
+     * system intervals they are read from, and that the cache is invalidated
+     * when kernel modules are added or removed
+     *
+     * @throws StateSystemDisposedException
+     *             Exceptions thrown by the state system queries
+     */
+    @Test
+    public void testProcessIdCache() throws StateSystemDisposedException {
+        LttngKernelTrace trace = fTrace;
+        assertNotNull(trace);
+        KernelAnalysisModule module = TmfTraceUtils.getAnalysisModuleOfClass(trace, KernelAnalysisModule.class, KernelAnalysisModule.ID);
+        assertNotNull(module);
+        ITmfStateSystem stateSystem = module.getStateSystem();
+        assertNotNull(stateSystem);
+        int pidQuark = stateSystem.optQuarkAbsolute(Attributes.THREADS, String.valueOf(threadCpu1), Attributes.PID);
+        assertTrue(pidQuark != ITmfStateSystem.INVALID_ATTRIBUTE);
+
+        IHostModel hostModel = ModelManager.getModelFor(trace.getHostId());
+        assertTrue(hostModel instanceof CompositeHostModel);
+        CompositeHostModel model = (CompositeHostModel) hostModel;
+
+        // Setting the kernel module again invalidates the cache
+        model.setKernelModule(trace, module);
+        assertNull(model.getCachedProcessId(threadCpu1, startTs + 1));
+
+        // The process ID is cached for the whole interval of the first query
+        ITmfStateInterval interval = stateSystem.querySingleState(startTs + 1, pidQuark);
+        assertEquals(parentProcessCpu1, model.getProcessId(threadCpu1, startTs + 1));
+        long middle = interval.getStartTime() + (interval.getEndTime() - interval.getStartTime()) / 2;
+        for (long t : new long[] { interval.getStartTime(), middle, interval.getEndTime() }) {
+            assertEquals(Integer.valueOf(parentProcessCpu1), model.getCachedProcessId(threadCpu1, t));
+            assertEquals(parentProcessCpu1, model.getProcessId(threadCpu1, t));
+        }
+
+        // Each interval of the thread is cached, with or without a process ID
+        for (ITmfStateInterval pidInterval : stateSystem.query2D(Collections.singleton(pidQuark), stateSystem.getStartTime(), stateSystem.getCurrentEndTime())) {
+            Object value = pidInterval.getValue();
+            int expected = value instanceof Number ? ((Number) value).intValue() : IHostModel.UNKNOWN_TID;
+            assertEquals(expected, model.getProcessId(threadCpu1, pidInterval.getStartTime()));
+            assertEquals(Integer.valueOf(expected), model.getCachedProcessId(threadCpu1, pidInterval.getEndTime()));
+        }
+
+        // Adding a kernel module invalidates the cache
+        model.setKernelModule(trace, module);
+        assertNull(model.getCachedProcessId(threadCpu1, startTs + 1));
+
+        // Removing the kernel module when the trace is closed invalidates the cache
+        assertEquals(parentProcessCpu1, model.getProcessId(threadCpu1, startTs + 1));
+        assertEquals(Integer.valueOf(parentProcessCpu1), model.getCachedProcessId(threadCpu1, startTs + 1));
+        model.traceClosed(new TmfTraceClosedSignal(this, trace));
+        assertNull(model.getCachedProcessId(threadCpu1, startTs + 1));
+        assertEquals(IHostModel.UNKNOWN_TID, model.getProcessId(threadCpu1, startTs + 1));
+    }
+
     /**
      * Test that resolving the aspect for another trace with the same host ID
      * gets the result from the Kernel analysis module
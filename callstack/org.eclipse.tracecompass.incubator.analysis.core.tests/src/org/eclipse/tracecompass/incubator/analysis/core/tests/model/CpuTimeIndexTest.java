@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.analysis.core.tests.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.tracecompass.incubator.internal.analysis.core.model.CpuTimeIndex;
+import org.junit.Test;
+
+/**
+ * Test the {@link CpuTimeIndex} class
+ */
+public class CpuTimeIndexTest {
+
+    /**
+     * Test the CPU time of threads in various time ranges
+     */
+    @Test
+    public void testCpuTime() {
+        CpuTimeIndex index = new CpuTimeIndex();
+        // Thread 1 on CPU at [10, 20) and [30, 40), added out of order
+        index.addInterval(1, 30, 40);
+        index.addInterval(1, 10, 20);
+        // Thread 2 on CPU at [15, 35)
+        index.addInterval(2, 15, 35);
+        index.sort();
+
+        assertEquals(20, index.getCpuTime(1, 0, 100));
+        assertEquals(20, index.getCpuTime(1, 10, 40));
+        assertEquals(10, index.getCpuTime(1, 10, 20));
+        assertEquals(5, index.getCpuTime(1, 15, 25));
+        assertEquals(10, index.getCpuTime(1, 15, 35));
+        assertEquals(0, index.getCpuTime(1, 20, 30));
+        assertEquals(0, index.getCpuTime(1, 40, 100));
+        assertEquals(0, index.getCpuTime(1, 0, 10));
+
+        assertEquals(20, index.getCpuTime(2, 0, 100));
+        assertEquals(5, index.getCpuTime(2, 30, 40));
+
+        // Absent thread and empty range
+        assertEquals(0, index.getCpuTime(3, 0, 100));
+        assertEquals(0, index.getCpuTime(1, 40, 10));
+    }
+
+    /**
+     * Test that overlapping intervals of a thread are counted only once
+     */
+    @Test
+    public void testOverlappingIntervals() {
+        CpuTimeIndex index = new CpuTimeIndex();
+        index.addInterval(1, 10, 30);
+        index.addInterval(1, 20, 25);
+        index.addInterval(1, 25, 40);
+        index.addInterval(1, 50, 60);
+        index.sort();
+
+        assertEquals(40, index.getCpuTime(1, 0, 100));
+        assertEquals(20, index.getCpuTime(1, 25, 55));
+    }
+
+}
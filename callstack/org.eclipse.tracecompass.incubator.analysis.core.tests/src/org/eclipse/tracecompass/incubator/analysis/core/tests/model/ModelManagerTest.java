@@ -13,8 +13,16 @@ package org.eclipse.tracecompass.incubator.analysis.core.tests.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.model.ModelManager;
 import org.junit.Test;
@@ -42,4 +50,35 @@ public class ModelManagerTest {
         assertTrue(model1 == model2);
         assertNotEquals(model1, model3);
     }
+
+    /**
+     * Test that threads getting the model of a host at the same time all get
+     * the same model
+     *
+     * @throws Exception
+     *             If a thread fails
+     */
+    @Test
+    public void testConcurrentGetModelFor() throws Exception {
+        String host = "concurrentHost";
+        int nbThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<IHostModel>> models = new ArrayList<>();
+            for (int i = 0; i < nbThreads; i++) {
+                models.add(executor.submit(() -> {
+                    start.await();
+                    return ModelManager.getModelFor(host);
+                }));
+            }
+            start.countDown();
+            IHostModel model = ModelManager.getModelFor(host);
+            for (Future<IHostModel> future : models) {
+                assertSame(model, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
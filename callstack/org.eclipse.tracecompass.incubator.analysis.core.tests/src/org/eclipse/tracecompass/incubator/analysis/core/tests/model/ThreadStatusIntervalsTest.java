@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.analysis.core.tests.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.os.linux.core.kernel.KernelAnalysisModule;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ProcessStatusInterval;
+import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.incubator.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.lttng2.kernel.core.trace.LttngKernelTrace;
+import org.eclipse.tracecompass.lttng2.lttng.kernel.core.tests.shared.LttngKernelTestTraceUtils;
+import org.eclipse.tracecompass.segmentstore.core.BasicSegment;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
+import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the status intervals of a thread read for many time windows at
+ * once are the same as those read for each window
+ */
+public class ThreadStatusIntervalsTest {
+
+    private static final CtfTestTrace TRACE = CtfTestTrace.KERNEL;
+    private static final int[] TIDS = { 1163, 1169, IHostModel.UNKNOWN_TID };
+
+    private @Nullable LttngKernelTrace fTrace;
+
+    /**
+     * Set-up the test
+     */
+    @Before
+    public void setUp() {
+        LttngKernelTrace trace = LttngKernelTestTraceUtils.getTrace(TRACE);
+        trace.traceOpened(new TmfTraceOpenedSignal(this, trace, null));
+        IAnalysisModule module = trace.getAnalysisModule(KernelAnalysisModule.ID);
+        assertNotNull(module);
+        module.schedule();
+        assertTrue(module.waitForCompletion());
+        fTrace = trace;
+    }
+
+    /**
+     * Dispose test objects
+     */
+    @After
+    public void tearDown() {
+        LttngKernelTestTraceUtils.dispose(TRACE);
+        fTrace = null;
+    }
+
+    /**
+     * Test the statuses of windows that are close in time, contiguous or far
+     * apart, and of windows that start before or end after the trace
+     */
+    @Test
+    public void testWindows() {
+        LttngKernelTrace trace = fTrace;
+        assertNotNull(trace);
+
+        IHostModel model = ModelManager.getModelFor(trace.getHostId());
+        long start = trace.getStartTime().toNanos();
+        long end = trace.getEndTime().toNanos();
+        long duration = end - start;
+
+        List<ISegment> windows = new ArrayList<>();
+        windows.add(new BasicSegment(start - 1000, start + 1000));
+        // Windows close to each other
+        for (int i = 0; i < 10; i++) {
+            long windowStart = start + duration / 100 + i * duration / 1000;
+            windows.add(new BasicSegment(windowStart, windowStart + duration / 2000));
+        }
+        // Contiguous windows
+        long windowStart = start + duration / 4;
+        windows.add(new BasicSegment(windowStart, windowStart + duration / 100));
+        windows.add(new BasicSegment(windowStart + duration / 100, windowStart + duration / 50));
+        // Windows far apart
+        windows.add(new BasicSegment(start + duration / 2, start + duration / 2 + 10));
+        windows.add(new BasicSegment(end - 1000, end + 1000));
+
+        for (int tid : TIDS) {
+            List<List<ProcessStatusInterval>> statuses = model.getThreadStatusIntervals(tid, windows);
+            assertEquals(windows.size(), statuses.size());
+            for (int i = 0; i < windows.size(); i++) {
+                ISegment window = windows.get(i);
+                List<ProcessStatusInterval> expected = new ArrayList<>();
+                model.getThreadStatusIntervals(tid, window.getStart(), window.getEnd(), 1).forEach(expected::add);
+                List<ProcessStatusInterval> actual = statuses.get(i);
+                String message = "Thread " + tid + ", window " + i;
+                assertEquals(message, expected.size(), actual.size());
+                for (int j = 0; j < expected.size(); j++) {
+                    assertEquals(message, expected.get(j).getStart(), actual.get(j).getStart());
+                    assertEquals(message, expected.get(j).getEnd(), actual.get(j).getEnd());
+                    assertEquals(message, expected.get(j).getProcessStatus(), actual.get(j).getProcessStatus());
+                }
+            }
+        }
+    }
+
+}
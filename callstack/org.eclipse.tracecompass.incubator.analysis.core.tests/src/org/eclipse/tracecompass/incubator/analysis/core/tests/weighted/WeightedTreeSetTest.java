@@ -13,6 +13,7 @@ package org.eclipse.tracecompass.incubator.analysis.core.tests.weighted;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.Collection;
 
@@ -23,6 +24,8 @@ import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTr
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTreeSet;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Test the {@link WeightedTreeSet} class
  *
@@ -158,4 +161,47 @@ public class WeightedTreeSetTest {
 
     }
 
+    /**
+     * Test adding many trees at once with
+     * {@link WeightedTreeSet#addWeightedTrees(Object, Collection)}
+     */
+    @Test
+    public void testAddingManyTrees() {
+        int initialWeight = 10;
+        String element1 = "element1";
+
+        WeightedTreeSet<String, String> treeSet = new WeightedTreeSet<>();
+        treeSet.addWeightedTree(element1, new WeightedTree<>(OBJ1, initialWeight));
+
+        // Add trees for an existing object and a new one
+        WeightedTree<String> wt1 = new WeightedTree<>(OBJ1, initialWeight);
+        wt1.addChild(new WeightedTree<>(OBJ2, initialWeight));
+        WeightedTree<String> wt2 = new WeightedTree<>(OBJ2, initialWeight);
+        WeightedTree<String> wt3 = new WeightedTree<>(OBJ2, initialWeight);
+        treeSet.addWeightedTrees(element1, ImmutableList.of(wt1, wt2, wt3));
+
+        assertEquals(1, treeSet.getElements().size());
+        Collection<WeightedTree<String>> trees = treeSet.getTreesFor(element1);
+        assertEquals(2, trees.size());
+        for (WeightedTree<String> tree : trees) {
+            switch (tree.getObject()) {
+            case OBJ1:
+                assertEquals(initialWeight * 2, tree.getWeight());
+                assertEquals(1, tree.getChildren().size());
+                break;
+            case OBJ2:
+                assertEquals(initialWeight * 2, tree.getWeight());
+                assertTrue(tree.getChildren().isEmpty());
+                break;
+            default:
+                fail("Unknown tree " + tree);
+            }
+        }
+
+        // The added trees are not modified
+        assertEquals(initialWeight, wt1.getWeight());
+        assertEquals(initialWeight, wt2.getWeight());
+        assertEquals(initialWeight, wt3.getWeight());
+    }
+
 }
@@ -312,4 +312,42 @@ public class WeightedTreeTest {
         }
     }
 
+    /**
+     * Test copying and merging very deep trees, that would overflow the stack
+     * if done recursively
+     */
+    @Test
+    public void testDeepTrees() {
+        int depth = 100000;
+        int weight = 10;
+        WeightedTree<String> wt1 = createDeepTree(depth, weight);
+        WeightedTree<String> wt2 = createDeepTree(depth, weight);
+        assertEquals("Max depth", depth, wt1.getMaxDepth());
+
+        WeightedTree<String> copy = wt1.copyOf();
+        assertEquals("Max depth of copy", depth, copy.getMaxDepth());
+
+        copy.merge(wt2);
+        assertEquals("Max depth after merge", depth, copy.getMaxDepth());
+        WeightedTree<String> tree = copy;
+        while (!tree.getChildren().isEmpty()) {
+            assertEquals("Merged weight", weight * 2, tree.getWeight());
+            assertEquals("Nb children", 1, tree.getChildren().size());
+            tree = tree.getChildren().iterator().next();
+        }
+        assertEquals("Unchanged original weight", weight, wt1.getWeight());
+        assertEquals("Unchanged merged weight", weight, wt2.getWeight());
+    }
+
+    private static WeightedTree<String> createDeepTree(int depth, int weight) {
+        WeightedTree<String> root = new WeightedTree<>(OBJECT_NAME1, weight);
+        WeightedTree<String> parent = root;
+        for (int i = 1; i < depth; i++) {
+            WeightedTree<String> child = new WeightedTree<>(i % 2 == 0 ? OBJECT_NAME1 : OBJECT_NAME2, weight);
+            parent.addChild(child);
+            parent = child;
+        }
+        return root;
+    }
+
 }
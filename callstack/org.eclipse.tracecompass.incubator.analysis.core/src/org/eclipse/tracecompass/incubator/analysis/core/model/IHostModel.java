@@ -11,12 +11,15 @@
 
 package org.eclipse.tracecompass.incubator.analysis.core.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ProcessStatusInterval;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 
 /**
@@ -164,6 +167,30 @@ public interface IHostModel {
      */
     Iterable<ProcessStatusInterval> getThreadStatusIntervals(int tid, long start, long end, long resolution);
 
+    /**
+     * Get the status intervals of a thread for many time windows at once. The
+     * intervals of each window are the same as those returned by
+     * {@link #getThreadStatusIntervals(int, long, long, long)} with a
+     * resolution of 1, but implementations can read the statuses of all the
+     * windows in a single pass.
+     *
+     * @param tid
+     *            The ID of the thread
+     * @param windows
+     *            The time windows for which to get the status intervals, sorted
+     *            by start time
+     * @return The status intervals of each window, in the order of the windows
+     */
+    default List<List<ProcessStatusInterval>> getThreadStatusIntervals(int tid, List<? extends ISegment> windows) {
+        List<List<ProcessStatusInterval>> statuses = new ArrayList<>(windows.size());
+        for (ISegment window : windows) {
+            List<ProcessStatusInterval> intervals = new ArrayList<>();
+            getThreadStatusIntervals(tid, window.getStart(), window.getEnd(), 1).forEach(intervals::add);
+            statuses.add(intervals);
+        }
+        return statuses;
+    }
+
     /**
      * Get whether sampling data is available for this host
      *
@@ -172,6 +199,17 @@ public interface IHostModel {
      */
     boolean isSamplingDataAvailable();
 
+    /**
+     * Get whether CPU time information is available for this host. The
+     * default implementation assumes that it may be available.
+     *
+     * @return <code>true</code> if CPU time information is available,
+     *         <code>false</code> otherwise
+     */
+    default boolean isCpuTimeAvailable() {
+        return true;
+    }
+
     /**
      * Get whether thread status information is available for this host
      *
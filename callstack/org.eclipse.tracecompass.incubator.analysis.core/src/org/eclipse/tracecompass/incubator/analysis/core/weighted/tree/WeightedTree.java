@@ -11,8 +11,10 @@
 
 package org.eclipse.tracecompass.incubator.analysis.core.weighted.tree;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,6 +41,34 @@ import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
  */
 public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
 
+    /**
+     * A tree that was copied, but whose children are not copied yet
+     */
+    private static final class PendingCopy<@NonNull T> {
+        private final WeightedTree<T> fCopy;
+        private final WeightedTree<T> fOriginal;
+
+        public PendingCopy(WeightedTree<T> copy, WeightedTree<T> original) {
+            fCopy = copy;
+            fOriginal = original;
+        }
+
+        public void copyChildren() {
+            for (WeightedTree<T> child : fOriginal.fChildren.values()) {
+                WeightedTree<T> childCopy = child.copyOf();
+                childCopy.fParent = fCopy;
+                fCopy.fChildren.put(childCopy.getObject(), childCopy);
+            }
+        }
+    }
+
+    /*
+     * The copies in progress in the current thread, whose children remain to be
+     * copied. Copies are not recursive: the copy constructor of the first tree
+     * copies the children of all the trees copied while it runs.
+     */
+    private static final ThreadLocal<@Nullable Deque<PendingCopy<?>>> PENDING_COPIES = new ThreadLocal<>();
+
     private final T fObject;
     private final Map<Object, WeightedTree<T>> fChildren = new HashMap<>();
     private @Nullable WeightedTree<T> fParent;
@@ -76,11 +106,26 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
      */
     protected WeightedTree(WeightedTree<T> copy) {
         fObject = copy.fObject;
-        for (WeightedTree<T> entry : copy.fChildren.values()) {
-            fChildren.put(entry.getObject(), entry.copyOf());
-        }
         fParent = copy.fParent;
         fWeight = copy.fWeight;
+        Deque<PendingCopy<?>> pendingCopies = PENDING_COPIES.get();
+        if (pendingCopies != null) {
+            // A parent tree is being copied, it will copy the children
+            pendingCopies.add(new PendingCopy<>(this, copy));
+            return;
+        }
+        pendingCopies = new ArrayDeque<>();
+        pendingCopies.add(new PendingCopy<>(this, copy));
+        PENDING_COPIES.set(pendingCopies);
+        try {
+            PendingCopy<?> pendingCopy = pendingCopies.poll();
+            while (pendingCopy != null) {
+                pendingCopy.copyChildren();
+                pendingCopy = pendingCopies.poll();
+            }
+        } finally {
+            PENDING_COPIES.remove();
+        }
     }
 
     /**
@@ -98,7 +143,8 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
      * should make sure they copy all fields of the tree, including the
      * statistics.
      *
-     * This constructor recursively copies all the children.
+     * All the children are also copied, iteratively, so deep trees can be
+     * copied.
      *
      * @return A copy of this weighted tree
      */
@@ -178,7 +224,9 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
      * implemented for each implementation of this class.
      *
      * It will then merge the children of both trees by adding the other's
-     * children to this one.
+     * children to this one. The trees are walked iteratively, so deep trees can
+     * be merged. The other tree is not modified and its children that are not
+     * in this tree are copied.
      *
      * @param other
      *            The tree to merge. It has to have the same object as the
@@ -189,9 +237,29 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
         if (!other.getObject().equals(getObject())) {
             throw new IllegalArgumentException("AggregatedStackTraces: trying to merge stack traces of different symbols"); //$NON-NLS-1$
         }
-        fWeight += other.fWeight;
-        mergeData(other);
-        mergeChildren(other);
+        Deque<WeightedTree<T>> destinations = new ArrayDeque<>();
+        Deque<WeightedTree<T>> sources = new ArrayDeque<>();
+        destinations.push(this);
+        sources.push(other);
+        while (!destinations.isEmpty()) {
+            WeightedTree<T> destination = destinations.pop();
+            WeightedTree<T> source = sources.pop();
+            destination.fWeight += source.fWeight;
+            destination.mergeData(source);
+            for (WeightedTree<T> otherChildSite : source.fChildren.values()) {
+                T childObject = otherChildSite.getObject();
+                WeightedTree<T> childSite = destination.fChildren.get(childObject);
+                if (childSite == null) {
+                    WeightedTree<T> childCopy = otherChildSite.copyOf();
+                    childCopy.fParent = destination;
+                    destination.fChildren.put(childObject, childCopy);
+                } else {
+                    // combine children
+                    destinations.push(childSite);
+                    sources.push(otherChildSite);
+                }
+            }
+        }
     }
 
     /**
@@ -220,25 +288,6 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
         return null;
     }
 
-    /**
-     * Merge the children trees
-     *
-     * @param other
-     *            The tree to merge to this one
-     */
-    private void mergeChildren(WeightedTree<T> other) {
-        for (WeightedTree<T> otherChildSite : other.fChildren.values()) {
-            T childObject = otherChildSite.getObject();
-            WeightedTree<T> childSite = fChildren.get(childObject);
-            if (childSite == null) {
-                fChildren.put(childObject, otherChildSite.copyOf());
-            } else {
-                // combine children
-                childSite.merge(otherChildSite);
-            }
-        }
-    }
-
     /**
      * Get the maximum depth under and including this tree. A depth of 1 means
      * there is one element under and including this element.
@@ -248,10 +297,20 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
      */
     public int getMaxDepth() {
         int maxDepth = 0;
-        for (WeightedTree<T> child : getChildren()) {
-            maxDepth = Math.max(maxDepth, child.getMaxDepth());
+        Deque<WeightedTree<T>> trees = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        trees.push(this);
+        depths.push(1);
+        while (!trees.isEmpty()) {
+            WeightedTree<T> tree = trees.pop();
+            int depth = depths.pop();
+            maxDepth = Math.max(maxDepth, depth);
+            for (WeightedTree<T> child : tree.getChildren()) {
+                trees.push(child);
+                depths.push(depth + 1);
+            }
         }
-        return maxDepth + 1;
+        return maxDepth;
     }
 
     /**
@@ -11,7 +11,9 @@
 
 package org.eclipse.tracecompass.incubator.analysis.core.weighted.tree;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNull;
@@ -97,9 +99,7 @@ public final class WeightedTreeGroupBy {
     private static <@NonNull N, E, T extends WeightedTree<N>> void recurseAddElementData(E originalElement, Object groupElement, IWeightedTreeSet<@NonNull N, E, T> treeSet, WeightedTreeSet<@NonNull N, Object> newTreeSet, int elDepth, int groupDepth) {
 
         // Add the current level of trees to the new tree set
-        for (T tree : treeSet.getTreesFor(originalElement)) {
-            newTreeSet.addWeightedTree(groupElement, tree.copyOf());
-        }
+        newTreeSet.addWeightedTrees(groupElement, treeSet.getTreesFor(originalElement));
 
         // Recursively add the next level of elements
         if (originalElement instanceof ITree) {
@@ -121,35 +121,34 @@ public final class WeightedTreeGroupBy {
         WeightedTreeSet<N, Object> newTreeSet = new WeightedTreeSet<>();
         Collection<E> elements = weightedTree.getElements();
         String mainGroup = "All"; //$NON-NLS-1$
+        // Merge the trees of all elements at once
+        List<T> trees = new ArrayList<>();
         for (E element : elements) {
-            recurseAddElementData(element, mainGroup, weightedTree, newTreeSet);
+            recurseAddElementData(element, weightedTree, trees);
         }
+        newTreeSet.addWeightedTrees(mainGroup, trees);
         return newTreeSet;
     }
 
     /*
      * @param element
      *            The element to get the trees for
-     * @param groupElement
-     *            The last group element
      * @param treeSet
      *            The original weighted tree set
-     * @param newTreeSet
-     *            The new weighted tree set to fill
+     * @param trees
+     *            The list of trees to fill
      */
-    private static <@NonNull N, E, T extends WeightedTree<N>> void recurseAddElementData(E element, String group, IWeightedTreeSet<@NonNull N, E, T> treeSet, WeightedTreeSet<@NonNull N, Object> newTreeSet) {
+    private static <@NonNull N, E, T extends WeightedTree<N>> void recurseAddElementData(E element, IWeightedTreeSet<@NonNull N, E, T> treeSet, List<T> trees) {
 
-        // Add the current level of trees to the new tree set
-        for (T tree : treeSet.getTreesFor(element)) {
-            newTreeSet.addWeightedTree(group, tree.copyOf());
-        }
+        // Add the current level of trees to the list
+        trees.addAll(treeSet.getTreesFor(element));
 
         // Recursively add the next level of elements
         if (element instanceof ITree) {
             ITree treeEl = (ITree) element;
             Collection<?> children = treeEl.getChildren();
             for (Object child : children) {
-                recurseAddElementData((E) child, group, treeSet, newTreeSet);
+                recurseAddElementData((E) child, treeSet, trees);
             }
         }
     }
@@ -12,7 +12,9 @@
 package org.eclipse.tracecompass.incubator.analysis.core.weighted.tree;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -60,17 +62,7 @@ public class WeightedTreeSet<@NonNull N, E> implements IWeightedTreeSet<N, E, We
      *            operations for instance)
      */
     public void addWeightedTree(E dstGroup, WeightedTree<N> tree) {
-        // Make sure the root element is present
-        E root = dstGroup;
-        if (dstGroup instanceof ITree) {
-            ITree parent = ((ITree) dstGroup).getParent();
-            while (parent != null) {
-                root = (E) parent;
-                parent = parent.getParent();
-            }
-            fRootElements.add(root);
-        }
-        fRootElements.add(root);
+        addRootElement(dstGroup);
 
         // Add the tree to the appropriate group
         Collection<WeightedTree<N>> trees = fTrees.get(dstGroup);
@@ -83,4 +75,52 @@ public class WeightedTreeSet<@NonNull N, E> implements IWeightedTreeSet<N, E, We
         fTrees.put(dstGroup, tree);
     }
 
+    /**
+     * Add many weighted trees for an element in this set, in a single pass.
+     * The trees for the same object are merged together and with the tree for
+     * this object already in the set, if any. Contrary to
+     * {@link #addWeightedTree(Object, WeightedTree)}, the trees are not
+     * modified, they are copied only if there is no tree for their object yet.
+     *
+     * @param dstGroup
+     *            The group to which to add the trees
+     * @param trees
+     *            The weighted trees to add to this set
+     */
+    public void addWeightedTrees(E dstGroup, Collection<? extends WeightedTree<N>> trees) {
+        if (trees.isEmpty()) {
+            return;
+        }
+        addRootElement(dstGroup);
+
+        Collection<WeightedTree<N>> groupTrees = fTrees.get(dstGroup);
+        Map<N, WeightedTree<N>> treesByObject = new HashMap<>();
+        for (WeightedTree<N> currentTree : groupTrees) {
+            treesByObject.put(currentTree.getObject(), currentTree);
+        }
+        for (WeightedTree<N> tree : trees) {
+            WeightedTree<N> currentTree = treesByObject.get(tree.getObject());
+            if (currentTree == null) {
+                WeightedTree<N> copy = tree.copyOf();
+                treesByObject.put(copy.getObject(), copy);
+                groupTrees.add(copy);
+            } else {
+                currentTree.merge(tree);
+            }
+        }
+    }
+
+    private void addRootElement(E dstGroup) {
+        // Make sure the root element is present
+        E root = dstGroup;
+        if (dstGroup instanceof ITree) {
+            ITree parent = ((ITree) dstGroup).getParent();
+            while (parent != null) {
+                root = (E) parent;
+                parent = parent.getParent();
+            }
+        }
+        fRootElements.add(root);
+    }
+
 }
@@ -11,10 +11,14 @@
 
 package org.eclipse.tracecompass.incubator.analysis.core.weighted.tree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -32,6 +36,22 @@ import com.google.common.collect.ImmutableList;
  */
 public final class WeightedTreeUtils {
 
+    /**
+     * Trees of a same level to compare, with the differential tree of their
+     * parent, or <code>null</code> for the first level
+     */
+    private static final class DiffLevel<@NonNull T> {
+        private final @Nullable DifferentialWeightedTree<T> fParent;
+        private final Collection<WeightedTree<T>> fFirst;
+        private final Collection<WeightedTree<T>> fSecond;
+
+        public DiffLevel(@Nullable DifferentialWeightedTree<T> parent, Collection<WeightedTree<T>> first, Collection<WeightedTree<T>> second) {
+            fParent = parent;
+            fFirst = first;
+            fSecond = second;
+        }
+    }
+
     private WeightedTreeUtils() {
         // Nothing to do
     }
@@ -51,17 +71,27 @@ public final class WeightedTreeUtils {
      */
     public static <@NonNull T> Collection<DifferentialWeightedTree<T>> diffTrees(Collection<WeightedTree<T>> first, Collection<WeightedTree<T>> second) {
         List<DifferentialWeightedTree<T>> diffTrees = new ArrayList<>();
-        for (WeightedTree<T> base : second) {
-            T object = base.getObject();
-            // Find the equivalent tree in the first collection
-            WeightedTree<T> other = findObject(first, object);
-            double diffWeight = other == null ? Double.NaN : (double) (base.getWeight() - other.getWeight()) / other.getWeight();
-            DifferentialWeightedTree<@NonNull T> diffTree = new DifferentialWeightedTree<>(base, object, base.getWeight(), diffWeight);
-            diffTrees.add(diffTree);
-
-            // Make the differential of the children
-            for (DifferentialWeightedTree<T> childTree : diffTrees(other == null ? Collections.emptyList() : other.getChildren(), base.getChildren())) {
-                diffTree.addChild(childTree);
+        // The levels of trees to compare are walked iteratively
+        Deque<DiffLevel<T>> levels = new ArrayDeque<>();
+        levels.push(new DiffLevel<>(null, first, second));
+        while (!levels.isEmpty()) {
+            DiffLevel<T> level = levels.pop();
+            DifferentialWeightedTree<T> parent = level.fParent;
+            Map<T, WeightedTree<T>> firstByObject = mapByObject(level.fFirst);
+            for (WeightedTree<T> base : level.fSecond) {
+                T object = base.getObject();
+                // Find the equivalent tree in the first collection
+                WeightedTree<T> other = firstByObject.get(object);
+                double diffWeight = other == null ? Double.NaN : (double) (base.getWeight() - other.getWeight()) / other.getWeight();
+                DifferentialWeightedTree<@NonNull T> diffTree = new DifferentialWeightedTree<>(base, object, base.getWeight(), diffWeight);
+                if (parent == null) {
+                    diffTrees.add(diffTree);
+                } else {
+                    parent.addChild(diffTree);
+                }
+
+                // Make the differential of the children
+                levels.push(new DiffLevel<>(diffTree, other == null ? Collections.emptyList() : other.getChildren(), base.getChildren()));
             }
         }
         return diffTrees;
@@ -191,13 +221,12 @@ public final class WeightedTreeUtils {
         return pairedElements;
     }
 
-    private static @Nullable <@NonNull T> WeightedTree<T> findObject(Collection<WeightedTree<T>> tree, @NonNull T object) {
-        for (WeightedTree<T> other : tree) {
-            if (other.getObject().equals(object)) {
-                return other;
-            }
+    private static <@NonNull T> Map<T, WeightedTree<T>> mapByObject(Collection<WeightedTree<T>> trees) {
+        Map<T, WeightedTree<T>> map = new HashMap<>();
+        for (WeightedTree<T> tree : trees) {
+            map.putIfAbsent(tree.getObject(), tree);
         }
-        return null;
+        return map;
     }
 
 }
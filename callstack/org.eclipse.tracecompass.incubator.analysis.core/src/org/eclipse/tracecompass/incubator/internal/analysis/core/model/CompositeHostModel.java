@@ -14,13 +14,19 @@ package org.eclipse.tracecompass.incubator.internal.analysis.core.model;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
 
 import org.eclipse.jdt.annotation.Nullable;
@@ -35,6 +41,11 @@ import org.eclipse.tracecompass.incubator.analysis.core.concepts.IThreadOnCpuPro
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ProcessStatusInterval;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.internal.analysis.core.model.ModelListener.IModuleWrapper;
+import org.eclipse.tracecompass.internal.analysis.os.linux.core.kernel.Attributes;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
@@ -44,8 +55,10 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 
 /**
  * Operating system model based on analyses who implement certain interfaces to
@@ -56,14 +69,37 @@ import com.google.common.collect.Multimap;
  *
  * @author Geneviève Bastien
  */
+@SuppressWarnings("restriction")
 public class CompositeHostModel implements IHostModel {
 
-    private final Multimap<ITmfTrace, Object> fTraceObjectMap = HashMultimap.create();
-    private final Set<ICpuTimeProvider> fCpuTimeProviders = NonNullUtils.checkNotNull(Collections.newSetFromMap(new WeakHashMap<ICpuTimeProvider, Boolean>()));
-    private final Set<IThreadOnCpuProvider> fThreadOnCpuProviders = NonNullUtils.checkNotNull(Collections.newSetFromMap(new WeakHashMap<IThreadOnCpuProvider, Boolean>()));
-    private final Set<ISamplingDataProvider> fSamplingDataProviders = NonNullUtils.checkNotNull(Collections.newSetFromMap(new WeakHashMap<ISamplingDataProvider, Boolean>()));
-    private final Set<KernelAnalysisModule> fKernelModules = NonNullUtils.checkNotNull(Collections.newSetFromMap(new WeakHashMap<KernelAnalysisModule, Boolean>()));
+    private final Multimap<ITmfTrace, Object> fTraceObjectMap = NonNullUtils.checkNotNull(Multimaps.synchronizedMultimap(HashMultimap.create()));
+    /*
+     * The providers are queried concurrently, for instance by the parallel
+     * call graph builds, so the weak sets are synchronized and iterated over
+     * snapshots, see getProviders()
+     */
+    private final Set<ICpuTimeProvider> fCpuTimeProviders = NonNullUtils.checkNotNull(Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ICpuTimeProvider, Boolean>())));
+    private final Set<IThreadOnCpuProvider> fThreadOnCpuProviders = NonNullUtils.checkNotNull(Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<IThreadOnCpuProvider, Boolean>())));
+    private final Set<ISamplingDataProvider> fSamplingDataProviders = NonNullUtils.checkNotNull(Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ISamplingDataProvider, Boolean>())));
+    private final Set<KernelAnalysisModule> fKernelModules = NonNullUtils.checkNotNull(Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<KernelAnalysisModule, Boolean>())));
     private final String fHostId;
+    // The process IDs resolved for each thread, by start time of the interval
+    private final Map<Integer, NavigableMap<Long, ProcessIdInterval>> fProcessIds = new HashMap<>();
+
+    /**
+     * A time interval during which a thread belongs to a process, or has no
+     * process if the PID is {@link IHostModel#UNKNOWN_TID}, as read from a
+     * kernel state system
+     */
+    private static final class ProcessIdInterval {
+        private final long fEnd;
+        private final int fPid;
+
+        public ProcessIdInterval(long end, int pid) {
+            fEnd = end;
+            fPid = pid;
+        }
+    }
 
     /**
      * Constructor
@@ -78,7 +114,7 @@ public class CompositeHostModel implements IHostModel {
 
     @Override
     public int getThreadOnCpu(int cpu, long t, boolean block) {
-        for (IThreadOnCpuProvider provider : fThreadOnCpuProviders) {
+        for (IThreadOnCpuProvider provider : getProviders(fThreadOnCpuProviders)) {
             Integer tid = provider.getThreadOnCpuAtTime(cpu, t, block);
             if (tid != null && tid != IHostModel.UNKNOWN_TID) {
                 return tid;
@@ -89,7 +125,7 @@ public class CompositeHostModel implements IHostModel {
 
     @Override
     public long getCpuTime(int tid, long start, long end) {
-        for (ICpuTimeProvider provider : fCpuTimeProviders) {
+        for (ICpuTimeProvider provider : getProviders(fCpuTimeProviders)) {
             long cpuTime = provider.getCpuTime(tid, start, end);
             if (cpuTime != IHostModel.TIME_UNKNOWN) {
                 return cpuTime;
@@ -100,7 +136,7 @@ public class CompositeHostModel implements IHostModel {
 
     @Override
     public Collection<AggregatedCallSite> getSamplingData(int tid, long start, long end) {
-        for (ISamplingDataProvider provider : fSamplingDataProviders) {
+        for (ISamplingDataProvider provider : getProviders(fSamplingDataProviders)) {
             Collection<AggregatedCallSite> samples = provider.getSamplingData(tid, start, end);
             if (!samples.isEmpty()) {
                 return samples;
@@ -111,16 +147,87 @@ public class CompositeHostModel implements IHostModel {
 
     @Override
     public int getProcessId(int tid, long t) {
-        Integer pid = fKernelModules.stream()
-                .map(module -> KernelThreadInformationProvider.getProcessId(module, tid, t))
-                .filter(Objects::nonNull)
-                .findFirst().orElse(null);
-        return pid == null ? IHostModel.UNKNOWN_TID : (int) pid;
+        Integer cachedPid = getCachedProcessId(tid, t);
+        if (cachedPid != null) {
+            return cachedPid;
+        }
+        List<KernelAnalysisModule> modules = getProviders(fKernelModules);
+        // The time range around t during which no module has a process ID
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        boolean cacheMiss = !modules.isEmpty();
+        for (KernelAnalysisModule module : modules) {
+            ITmfStateSystem stateSystem = module.getStateSystem();
+            if (stateSystem == null) {
+                cacheMiss = false;
+                continue;
+            }
+            int pidQuark = stateSystem.optQuarkAbsolute(Attributes.THREADS, String.valueOf(tid), Attributes.PID);
+            if (pidQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+                // The thread may still appear if the state system is not built
+                cacheMiss &= stateSystem.waitUntilBuilt(0);
+                continue;
+            }
+            try {
+                ITmfStateInterval interval = stateSystem.querySingleState(t, pidQuark);
+                Object value = interval.getValue();
+                if (value instanceof Number) {
+                    int pid = ((Number) value).intValue();
+                    cacheProcessId(tid, interval.getStartTime(), interval.getEndTime(), pid);
+                    return pid;
+                }
+                start = Math.max(start, interval.getStartTime());
+                end = Math.min(end, interval.getEndTime());
+            } catch (StateSystemDisposedException | TimeRangeException e) {
+                cacheMiss = false;
+            }
+        }
+        if (cacheMiss && start != Long.MIN_VALUE && end != Long.MAX_VALUE) {
+            // Also cache the time range where the thread has no process ID
+            cacheProcessId(tid, start, end, IHostModel.UNKNOWN_TID);
+        }
+        return IHostModel.UNKNOWN_TID;
+    }
+
+    /**
+     * Get the process ID of a thread from the process IDs cached by
+     * {@link #getProcessId(int, long)}
+     *
+     * @param tid
+     *            The ID of the thread
+     * @param t
+     *            The time at which to get the process ID
+     * @return The cached process ID, {@link IHostModel#UNKNOWN_TID} if it is
+     *         cached that the thread has no process ID at that time, or
+     *         <code>null</code> if nothing is cached for this time
+     */
+    @VisibleForTesting
+    public @Nullable Integer getCachedProcessId(int tid, long t) {
+        synchronized (fProcessIds) {
+            NavigableMap<Long, ProcessIdInterval> intervals = fProcessIds.get(tid);
+            @Nullable Entry<Long, ProcessIdInterval> entry = intervals == null ? null : intervals.floorEntry(t);
+            if (entry != null && entry.getValue().fEnd >= t) {
+                return entry.getValue().fPid;
+            }
+            return null;
+        }
+    }
+
+    private void cacheProcessId(int tid, long start, long end, int pid) {
+        synchronized (fProcessIds) {
+            fProcessIds.computeIfAbsent(tid, id -> new TreeMap<>()).put(start, new ProcessIdInterval(end, pid));
+        }
+    }
+
+    private void invalidateProcessIds() {
+        synchronized (fProcessIds) {
+            fProcessIds.clear();
+        }
     }
 
     @Override
     public @Nullable String getExecName(int tid, long t) {
-        return fKernelModules.stream()
+        return getProviders(fKernelModules).stream()
                 .map(module -> KernelThreadInformationProvider.getExecutableName(module, tid))
                 .filter(Objects::nonNull)
                 .findFirst().orElse(null);
@@ -206,6 +313,8 @@ public class CompositeHostModel implements IHostModel {
     public void setKernelModule(ITmfTrace trace, KernelAnalysisModule module) {
         fKernelModules.add(module);
         fTraceObjectMap.put(trace, module);
+        // The new module may resolve threads before the others
+        invalidateProcessIds();
     }
 
     @Override
@@ -287,11 +396,105 @@ public class CompositeHostModel implements IHostModel {
         return Objects.requireNonNull(Collections.emptyList());
     }
 
+    @Override
+    public List<List<ProcessStatusInterval>> getThreadStatusIntervals(int tid, List<? extends ISegment> windows) {
+        List<List<ProcessStatusInterval>> statuses = new ArrayList<>(windows.size());
+        List<ITmfStateInterval> intervals = queryThreadStatuses(tid, windows);
+        // The windows are sorted by start time and the intervals of the thread
+        // do not overlap, so the intervals before a window can be skipped for
+        // the following ones
+        int first = 0;
+        for (ISegment window : windows) {
+            while (first < intervals.size() && intervals.get(first).getEndTime() < window.getStart()) {
+                first++;
+            }
+            List<ProcessStatusInterval> windowStatuses = new ArrayList<>();
+            for (int i = first; i < intervals.size() && intervals.get(i).getStartTime() <= window.getEnd(); i++) {
+                ITmfStateInterval interval = intervals.get(i);
+                long start = Math.max(interval.getStartTime(), window.getStart());
+                long end = Math.min(interval.getEndTime(), window.getEnd());
+                windowStatuses.add(new ProcessStatusInterval(start, end, ProcessStatus.getStatusFromStateValue(interval.getStateValue())));
+            }
+            statuses.add(windowStatuses);
+        }
+        return statuses;
+    }
+
+    /**
+     * Query the status intervals of a thread that span the time windows,
+     * sorted by time. Windows that are close in time are read with a single
+     * query, but a new query is done after a gap longer than the windows
+     * already grouped, so that the queries do not read the idle time between
+     * distant windows.
+     */
+    private List<ITmfStateInterval> queryThreadStatuses(int tid, List<? extends ISegment> windows) {
+        if (tid == IHostModel.UNKNOWN_TID || windows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Iterator<KernelAnalysisModule> modules = TmfTraceUtils.getAnalysisModulesOfClass(fHostId, KernelAnalysisModule.class).iterator();
+        if (!modules.hasNext()) {
+            return Collections.emptyList();
+        }
+        ITmfStateSystem stateSystem = modules.next().getStateSystem();
+        if (stateSystem == null) {
+            return Collections.emptyList();
+        }
+        int threadQuark = stateSystem.optQuarkAbsolute(Attributes.THREADS, String.valueOf(tid));
+        if (threadQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return Collections.emptyList();
+        }
+        List<ITmfStateInterval> intervals = new ArrayList<>();
+        try {
+            long chunkStart = windows.get(0).getStart();
+            long chunkEnd = windows.get(0).getEnd();
+            for (ISegment window : windows) {
+                if (window.getStart() - chunkEnd > chunkEnd - chunkStart) {
+                    queryThreadStatuses(stateSystem, threadQuark, chunkStart, chunkEnd, intervals);
+                    chunkStart = window.getStart();
+                    chunkEnd = window.getEnd();
+                } else {
+                    chunkEnd = Math.max(chunkEnd, window.getEnd());
+                }
+            }
+            queryThreadStatuses(stateSystem, threadQuark, chunkStart, chunkEnd, intervals);
+        } catch (StateSystemDisposedException | TimeRangeException e) {
+            return Collections.emptyList();
+        }
+        return intervals;
+    }
+
+    /**
+     * Add the status intervals of a thread between two times to the sorted
+     * list of intervals. An interval that spans this time range and the
+     * previous one is only added once.
+     */
+    private static void queryThreadStatuses(ITmfStateSystem stateSystem, int threadQuark, long queryStart, long queryEnd, List<ITmfStateInterval> intervals) throws StateSystemDisposedException {
+        long start = Math.max(queryStart, stateSystem.getStartTime());
+        long end = Math.min(queryEnd, stateSystem.getCurrentEndTime());
+        if (start > end) {
+            return;
+        }
+        List<ITmfStateInterval> chunk = new ArrayList<>();
+        stateSystem.query2D(Collections.singleton(threadQuark), start, end).forEach(chunk::add);
+        chunk.sort(Comparator.comparingLong(ITmfStateInterval::getStartTime));
+        long lastStart = intervals.isEmpty() ? Long.MIN_VALUE : intervals.get(intervals.size() - 1).getStartTime();
+        for (ITmfStateInterval interval : chunk) {
+            if (interval.getStartTime() > lastStart) {
+                intervals.add(interval);
+            }
+        }
+    }
+
     @Override
     public boolean isSamplingDataAvailable() {
         return !fSamplingDataProviders.isEmpty();
     }
 
+    @Override
+    public boolean isCpuTimeAvailable() {
+        return !fCpuTimeProviders.isEmpty();
+    }
+
     @Override
     public boolean isThreadStatusAvailable() {
         Iterable<KernelAnalysisModule> modules = TmfTraceUtils.getAnalysisModulesOfClass(fHostId, KernelAnalysisModule.class);
@@ -321,6 +524,7 @@ public class CompositeHostModel implements IHostModel {
                 }
                 if (object instanceof KernelAnalysisModule) {
                     fKernelModules.remove(object);
+                    invalidateProcessIds();
                 }
             }
         });
@@ -337,20 +541,31 @@ public class CompositeHostModel implements IHostModel {
         if (requiredData.contains(ModelDataType.PID) || requiredData.contains(ModelDataType.EXEC_NAME) ||
                 requiredData.contains(ModelDataType.KERNEL_STATES)) {
             // Add the kernel modules
-            list.addAll(fKernelModules);
+            list.addAll(getProviders(fKernelModules));
         }
         if (requiredData.contains(ModelDataType.TID)) {
-            list.addAll(getModulesFrom(fThreadOnCpuProviders));
+            list.addAll(getModulesFrom(getProviders(fThreadOnCpuProviders)));
         }
         if (requiredData.contains(ModelDataType.CPU_TIME)) {
-            list.addAll(getModulesFrom(fCpuTimeProviders));
+            list.addAll(getModulesFrom(getProviders(fCpuTimeProviders)));
         }
         if (requiredData.contains(ModelDataType.SAMPLING_DATA)) {
-            list.addAll(getModulesFrom(fSamplingDataProviders));
+            list.addAll(getModulesFrom(getProviders(fSamplingDataProviders)));
         }
         return list;
     }
 
+    /**
+     * Get a snapshot of a synchronized set of providers, to iterate over
+     * without holding its lock. The weak sets remove the stale providers on
+     * any access, so they cannot be iterated while other threads use them.
+     */
+    private static <T> List<T> getProviders(Set<T> providers) {
+        synchronized (providers) {
+            return new ArrayList<>(providers);
+        }
+    }
+
     private static Collection<IAnalysisModule> getModulesFrom(Collection<?> set) {
         List<IAnalysisModule> list = new ArrayList<>();
         for (Object obj : set) {
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.analysis.core.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the time each thread spent on a CPU. The intervals during which
+ * a thread is on a CPU are kept sorted by time, with the cumulative time on
+ * CPU at the start of each interval, so the CPU time of a thread in a time
+ * range is computed with two binary searches and a subtraction.
+ *
+ * The intervals are first added with {@link #addInterval(int, long, long)},
+ * then {@link #sort()} must be called before querying the index.
+ */
+public final class CpuTimeIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The intervals on CPU of one thread */
+    private static final class ThreadIntervals {
+        private int fSize = 0;
+        private long[] fStarts = new long[INITIAL_CAPACITY];
+        private long[] fEnds = new long[INITIAL_CAPACITY];
+        // The time on CPU before the start of each interval
+        private long[] fCumulative = new long[0];
+
+        private void add(long start, long end) {
+            if (fSize == fStarts.length) {
+                int capacity = fSize * 2;
+                fStarts = Arrays.copyOf(fStarts, capacity);
+                fEnds = Arrays.copyOf(fEnds, capacity);
+            }
+            fStarts[fSize] = start;
+            fEnds[fSize] = end;
+            fSize++;
+        }
+
+        /**
+         * Sort the intervals and merge those that overlap, then compute the
+         * cumulative times
+         */
+        private void sort() {
+            Integer[] order = new Integer[fSize];
+            for (int i = 0; i < fSize; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> fStarts[i]));
+            long[] starts = new long[fSize];
+            long[] ends = new long[fSize];
+            int size = 0;
+            for (int i = 0; i < fSize; i++) {
+                long start = fStarts[order[i]];
+                long end = fEnds[order[i]];
+                if (size > 0 && start <= ends[size - 1]) {
+                    ends[size - 1] = Math.max(ends[size - 1], end);
+                } else {
+                    starts[size] = start;
+                    ends[size] = end;
+                    size++;
+                }
+            }
+            long[] cumulative = new long[size];
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                cumulative[i] = total;
+                total += ends[i] - starts[i];
+            }
+            fSize = size;
+            fStarts = Arrays.copyOf(starts, size);
+            fEnds = Arrays.copyOf(ends, size);
+            fCumulative = cumulative;
+        }
+
+        /**
+         * Get the time spent on CPU before a time
+         */
+        private long getCpuTimeBefore(long time) {
+            int index = Arrays.binarySearch(fStarts, 0, fSize, time);
+            if (index < 0) {
+                // Index of the last interval starting before the time
+                index = -index - 2;
+            }
+            if (index < 0) {
+                return 0;
+            }
+            return fCumulative[index] + Math.min(time, fEnds[index]) - fStarts[index];
+        }
+    }
+
+    private final Map<Integer, ThreadIntervals> fThreads = new HashMap<>();
+
+    /**
+     * Add an interval during which a thread is on a CPU
+     *
+     * @param tid
+     *            The ID of the thread
+     * @param start
+     *            The start time of the interval
+     * @param end
+     *            The end time of the interval, exclusive
+     */
+    public void addInterval(int tid, long start, long end) {
+        if (end <= start) {
+            return;
+        }
+        fThreads.computeIfAbsent(tid, t -> new ThreadIntervals()).add(start, end);
+    }
+
+    /**
+     * Sort the intervals of each thread, to call once all the intervals are
+     * added and before querying the index
+     */
+    public void sort() {
+        for (ThreadIntervals intervals : fThreads.values()) {
+            intervals.sort();
+        }
+    }
+
+    /**
+     * Get the time a thread spent on a CPU in a time range
+     *
+     * @param tid
+     *            The ID of the thread
+     * @param start
+     *            The start of the range
+     * @param end
+     *            The end of the range, exclusive
+     * @return The time the thread spent on CPU in this range, 0 if the thread
+     *         was never on a CPU
+     */
+    public long getCpuTime(int tid, long start, long end) {
+        ThreadIntervals intervals = fThreads.get(tid);
+        if (intervals == null || end <= start) {
+            return 0;
+        }
+        return intervals.getCpuTimeBefore(end) - intervals.getCpuTimeBefore(start);
+    }
+
+}
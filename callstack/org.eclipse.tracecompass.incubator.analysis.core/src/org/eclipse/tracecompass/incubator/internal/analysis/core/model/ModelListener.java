@@ -12,6 +12,7 @@
 package org.eclipse.tracecompass.incubator.internal.analysis.core.model;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -129,6 +130,7 @@ public class ModelListener implements ITmfNewAnalysisModuleListener {
 
         private final WeakReference<@Nullable TidAnalysisModule> fModule;
         private final Collection<String> fHostIds;
+        private volatile @Nullable CpuTimeIndex fCpuTimeIndex = null;
 
         public TidAnalysisWrapper(TidAnalysisModule module, String hostId) {
             fHostIds = Collections.singleton(hostId);
@@ -174,6 +176,14 @@ public class ModelListener implements ITmfNewAnalysisModuleListener {
                 return IHostModel.TIME_UNKNOWN;
             }
 
+            CpuTimeIndex index = getCpuTimeIndex(stateSystem);
+            if (index != null) {
+                long indexStart = Long.max(start, stateSystem.getStartTime());
+                long indexEnd = Math.min(realEnd, stateSystem.getCurrentEndTime());
+                return index.getCpuTime(tid, indexStart, indexEnd);
+            }
+
+            // The analysis is not done, query the state system
             long time = Long.max(start, stateSystem.getStartTime());
             final long end = Math.min(realEnd, stateSystem.getCurrentEndTime());
             boolean found = false;
@@ -221,6 +231,42 @@ public class ModelListener implements ITmfNewAnalysisModuleListener {
             return cpuTime;
         }
 
+        /**
+         * Get the index of the CPU time of the threads, building it the first
+         * time it is requested after the state system is built
+         */
+        private @Nullable CpuTimeIndex getCpuTimeIndex(ITmfStateSystem stateSystem) {
+            CpuTimeIndex index = fCpuTimeIndex;
+            if (index != null || !stateSystem.waitUntilBuilt(0)) {
+                return index;
+            }
+            synchronized (this) {
+                index = fCpuTimeIndex;
+                if (index != null) {
+                    return index;
+                }
+                index = new CpuTimeIndex();
+                List<Integer> quarks = new ArrayList<>();
+                for (int quark = 0; quark < stateSystem.getNbAttributes(); quark++) {
+                    quarks.add(quark);
+                }
+                try {
+                    // Each attribute is a CPU, whose value is the thread running on it
+                    for (ITmfStateInterval interval : stateSystem.query2D(quarks, stateSystem.getStartTime(), stateSystem.getCurrentEndTime())) {
+                        Object value = interval.getValue();
+                        if (value instanceof Number) {
+                            index.addInterval(((Number) value).intValue(), interval.getStartTime(), interval.getEndTime() + 1);
+                        }
+                    }
+                } catch (StateSystemDisposedException e) {
+                    return null;
+                }
+                index.sort();
+                fCpuTimeIndex = index;
+                return index;
+            }
+        }
+
         @Override
         public Optional<IAnalysisModule> getModule() {
             TidAnalysisModule module = fModule.get();
@@ -11,6 +11,7 @@
 
 package org.eclipse.tracecompass.incubator.callstack.core.tests.perf.analysis;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -32,9 +33,11 @@ import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
 import org.eclipse.tracecompass.incubator.callstack.core.callgraph.ICallGraphProvider;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.IFlameChartProvider;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesystem.InstrumentedCallStackAnalysis;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CallGraphAnalysis;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
 import org.eclipse.tracecompass.segmentstore.core.ISegmentStore;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
 import org.eclipse.tracecompass.tmf.core.tests.shared.TmfTestHelper;
@@ -63,6 +66,8 @@ public abstract class CallStackAndGraphBenchmark {
     private static final String TEST_CALLSTACK_BUILD = "Building Callstack (%s)";
     private static final String TEST_CALLSTACK_PARSESEGSTORE = "Callstack segment store (%s)";
     private static final String TEST_CALLGRAPH_BUILD = "Building CallGraph (%s)";
+    private static final String TEST_CALLGRAPH_SERIAL_BUILD = "Building CallGraph Serially (%s)";
+    private static final String TEST_CALLGRAPH_PARALLEL_BUILD = "Building CallGraph In Parallel (%s)";
     private static final String TEST_CALLGRAPH_QUERY = "CallGraph Query (%s)";
     private static final String TEST_CALLGRAPH_GROUPBY = "CallGraph Group By (%s)";
 
@@ -91,9 +96,11 @@ public abstract class CallStackAndGraphBenchmark {
      *
      * @throws TmfTraceException
      *             Exceptions thrown getting the trace
+     * @throws TmfAnalysisException
+     *             Exceptions thrown setting the trace of the call graph
      */
     @Test
-    public void runCpuBenchmark() throws TmfTraceException {
+    public void runCpuBenchmark() throws TmfTraceException, TmfAnalysisException {
         Performance perf = Performance.getDefault();
         PerformanceMeter callStackBuildPm = Objects.requireNonNull(perf.createPerformanceMeter(TEST_ID + String.format(TEST_CALLSTACK_BUILD, fName)));
         perf.tagAsSummary(callStackBuildPm, String.format(TEST_CALLSTACK_BUILD, fName), Dimension.CPU_TIME);
@@ -101,6 +108,11 @@ public abstract class CallStackAndGraphBenchmark {
         perf.tagAsSummary(callStackSegStorePm, String.format(TEST_CALLSTACK_PARSESEGSTORE, fName), Dimension.CPU_TIME);
         PerformanceMeter callgraphBuildPm = Objects.requireNonNull(perf.createPerformanceMeter(TEST_ID + String.format(TEST_CALLGRAPH_BUILD, fName)));
         perf.tagAsSummary(callgraphBuildPm, String.format(TEST_CALLGRAPH_BUILD, fName), Dimension.CPU_TIME);
+        // The speedup of the parallel build shows in the elapsed time, not the CPU time
+        PerformanceMeter callgraphSerialPm = Objects.requireNonNull(perf.createPerformanceMeter(TEST_ID + String.format(TEST_CALLGRAPH_SERIAL_BUILD, fName)));
+        perf.tagAsSummary(callgraphSerialPm, String.format(TEST_CALLGRAPH_SERIAL_BUILD, fName), Dimension.ELAPSED_PROCESS);
+        PerformanceMeter callgraphParallelPm = Objects.requireNonNull(perf.createPerformanceMeter(TEST_ID + String.format(TEST_CALLGRAPH_PARALLEL_BUILD, fName)));
+        perf.tagAsSummary(callgraphParallelPm, String.format(TEST_CALLGRAPH_PARALLEL_BUILD, fName), Dimension.ELAPSED_PROCESS);
         PerformanceMeter callgraphQueryPm = perf.createPerformanceMeter(TEST_ID + String.format(TEST_CALLGRAPH_QUERY, fName));
         perf.tagAsSummary(callgraphQueryPm, String.format(TEST_CALLGRAPH_QUERY, fName), Dimension.CPU_TIME);
         PerformanceMeter callgraphGroupByPm = perf.createPerformanceMeter(TEST_ID + String.format(TEST_CALLGRAPH_GROUPBY, fName));
@@ -121,6 +133,7 @@ public abstract class CallStackAndGraphBenchmark {
                     // building
                     isFlameChartProvider = true;
                     benchmarkInstrumented((IFlameChartProvider) analysisModule, callStackBuildPm, callStackSegStorePm, callgraphBuildPm);
+                    benchmarkParallelCallGraph(trace, (IFlameChartProvider) analysisModule, callgraphSerialPm, callgraphParallelPm);
                 } else {
                     benchmarkCallGraphProvider(callGraphModule, callgraphBuildPm);
                 }
@@ -173,6 +186,8 @@ public abstract class CallStackAndGraphBenchmark {
         if (isFlameChartProvider) {
             callStackBuildPm.commit();
             callStackSegStorePm.commit();
+            callgraphSerialPm.commit();
+            callgraphParallelPm.commit();
         }
         callgraphBuildPm.commit();
         callgraphQueryPm.commit();
@@ -220,6 +235,30 @@ public abstract class CallStackAndGraphBenchmark {
         assertTrue(callGraph.getElements().size() > 0);
     }
 
+    private static void benchmarkParallelCallGraph(TmfTrace trace, IFlameChartProvider analysisModule, PerformanceMeter callgraphSerialPm, PerformanceMeter callgraphParallelPm) throws TmfAnalysisException {
+        // Build the call graph from the same call stack in a single thread,
+        // then with the default number of threads, to compare them
+        CallGraphAnalysis serialCallGraph = new CallGraphAnalysis(analysisModule);
+        CallGraphAnalysis parallelCallGraph = new CallGraphAnalysis(analysisModule);
+        try {
+            serialCallGraph.setTrace(trace);
+            serialCallGraph.setThreadCount(1);
+            callgraphSerialPm.start();
+            TmfTestHelper.executeAnalysis(serialCallGraph);
+            callgraphSerialPm.stop();
+
+            parallelCallGraph.setTrace(trace);
+            callgraphParallelPm.start();
+            TmfTestHelper.executeAnalysis(parallelCallGraph);
+            callgraphParallelPm.stop();
+
+            assertEquals(serialCallGraph.getCallGraph().getElements(), parallelCallGraph.getCallGraph().getElements());
+        } finally {
+            serialCallGraph.dispose();
+            parallelCallGraph.dispose();
+        }
+    }
+
     /**
      * Get the trace for this analysis. Every call to getTrace() should return a
      * fresh trace fully initialized. The caller is responsible to dispose the trace
@@ -16,12 +16,18 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICpuTimeProvider;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
@@ -34,8 +40,10 @@ import org.eclipse.tracecompass.incubator.internal.analysis.core.model.Composite
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.InstrumentedCallStackElement;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.AggregatedCalledFunction;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CallGraphAnalysis;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CallGraphFile;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.junit.After;
 import org.junit.Test;
 
@@ -84,6 +92,72 @@ public class CallGraphWithCallStackAnalysisTest extends CallStackTestBase {
         }
     }
 
+    /**
+     * Test that the callgraph is saved in a supplementary file and that a new
+     * analysis reads the callgraph from this file instead of computing it
+     *
+     * @throws TmfAnalysisException
+     *             Propagates exceptions
+     */
+    @Test
+    public void testPersistedCallGraph() throws TmfAnalysisException {
+        File directory = new File(TmfTraceManager.getSupplementaryFileDir(getTrace()));
+        File ssFile = new File(directory, getModule().getId() + ".ht");
+        CallGraphAnalysis cga = getCallGraphModule();
+        File file = new File(directory, cga.getId() + ".callgraph");
+        CallGraph computed;
+        CallGraph range;
+        try {
+            assertTrue(file.exists());
+            computed = cga.getCallGraph();
+            range = cga.getCallGraph(TmfTimestamp.fromNanos(1), TmfTimestamp.fromNanos(10));
+        } finally {
+            cga.dispose();
+        }
+
+        try {
+            // A new analysis reads the same callgraph, statistics included
+            cga = getCallGraphModule();
+            try {
+                CallGraph cg = cga.getCallGraph();
+                for (ICallStackElement element : computed.getElements()) {
+                    assertElementsEqual("persisted", computed, cg, element);
+                }
+            } finally {
+                cga.dispose();
+            }
+
+            // Replace the file with the callgraph of a time range, a new
+            // analysis returns it instead of the callgraph of the callstack
+            List<ICallStackElement> leaves = new ArrayList<>();
+            for (ICallStackElement element : Objects.requireNonNull(getModule().getCallStackSeries()).getRootElements()) {
+                getLeafElements(element, leaves);
+            }
+            CallGraphFile.write(file, ssFile, range, leaves);
+            cga = getCallGraphModule();
+            try {
+                CallGraph cg = cga.getCallGraph();
+                for (ICallStackElement element : range.getElements()) {
+                    assertElementsEqual("hand-built", range, cg, element);
+                }
+            } finally {
+                cga.dispose();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void getLeafElements(ICallStackElement element, List<ICallStackElement> leaves) {
+        if (element.isLeaf()) {
+            leaves.add(element);
+            return;
+        }
+        for (ICallStackElement child : element.getChildrenElements()) {
+            getLeafElements(child, leaves);
+        }
+    }
+
     private static void verifyProcess1(CallGraph cg, ICallStackElement element) {
         Collection<ICallStackElement> secondLevels = element.getChildrenElements();
         assertEquals(2, secondLevels.size());
@@ -612,6 +686,68 @@ public class CallGraphWithCallStackAnalysisTest extends CallStackTestBase {
         }
     }
 
+    /**
+     * Test that the callgraphs of time ranges built from the call graphs of
+     * the time buckets are the same as the ones aggregated from the callstack
+     * for the whole range
+     *
+     * @throws TmfAnalysisException
+     *             Propagates exceptions
+     */
+    @Test
+    public void testBucketRangeCallGraph() throws TmfAnalysisException {
+        CallGraphAnalysis cga = getCallGraphModule();
+        try {
+            // Buckets of 4 ns: [1, 5), [5, 9), [9, 13) and [13, 17)
+            cga.setBucketCount(4);
+            long[][] ranges = { { 1, 20 }, { 1, 10 }, { 3, 17 }, { 5, 13 }, { 4, 14 }, { 9, 20 }, { 2, 6 }, { 13, 20 } };
+            for (long[] range : ranges) {
+                CallGraph expected = cga.buildCallGraph(TmfTimestamp.fromNanos(range[0]), TmfTimestamp.fromNanos(range[1]));
+                CallGraph actual = cga.getCallGraph(TmfTimestamp.fromNanos(range[0]), TmfTimestamp.fromNanos(range[1]));
+                String message = "[" + range[0] + ", " + range[1] + "]";
+                assertEquals(message, expected.getElements(), actual.getElements());
+                for (ICallStackElement element : expected.getElements()) {
+                    assertElementsEqual(message, expected, actual, element);
+                }
+            }
+        } finally {
+            cga.dispose();
+        }
+    }
+
+    private static void assertElementsEqual(String message, CallGraph expected, CallGraph actual, ICallStackElement element) {
+        assertCallSitesEqual(message, expected.getCallingContextTree(element), actual.getCallingContextTree(element));
+        for (ICallStackElement child : element.getChildrenElements()) {
+            assertElementsEqual(message, expected, actual, child);
+        }
+    }
+
+    private static void assertCallSitesEqual(String message, Collection<AggregatedCallSite> expected, Collection<AggregatedCallSite> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        Map<String, AggregatedCallSite> actualBySymbol = new HashMap<>();
+        for (AggregatedCallSite callsite : actual) {
+            actualBySymbol.put(getCallSiteSymbol(callsite).resolve(Collections.emptySet()), callsite);
+        }
+        for (AggregatedCallSite callsite : expected) {
+            String symbol = getCallSiteSymbol(callsite).resolve(Collections.emptySet());
+            String callsiteMessage = message + " " + symbol;
+            AggregatedCalledFunction expectedFunction = (AggregatedCalledFunction) callsite;
+            AggregatedCalledFunction actualFunction = (AggregatedCalledFunction) actualBySymbol.get(symbol);
+            assertNotNull(callsiteMessage, actualFunction);
+            assertEquals(callsiteMessage, expectedFunction.getDuration(), actualFunction.getDuration());
+            assertEquals(callsiteMessage, expectedFunction.getSelfTime(), actualFunction.getSelfTime());
+            assertEquals(callsiteMessage, expectedFunction.getCpuTime(), actualFunction.getCpuTime());
+            assertEquals(callsiteMessage, expectedFunction.getNbCalls(), actualFunction.getNbCalls());
+            IStatistics<?> expectedStats = expectedFunction.getFunctionStatistics().getDurationStatistics();
+            IStatistics<?> actualStats = actualFunction.getFunctionStatistics().getDurationStatistics();
+            assertEquals(callsiteMessage, expectedStats.getMin(), actualStats.getMin());
+            assertEquals(callsiteMessage, expectedStats.getMax(), actualStats.getMax());
+            assertEquals(callsiteMessage, expectedStats.getMean(), actualStats.getMean(), 0.000001);
+            assertEquals(callsiteMessage, expectedStats.getStdDev(), actualStats.getStdDev(), 0.000001);
+            assertCallSitesEqual(callsiteMessage, expectedFunction.getCallees(), actualFunction.getCallees());
+        }
+    }
+
     /**
      * Test the callgraph for a time selection, with a small trace
      */
@@ -12,8 +12,10 @@
 package org.eclipse.tracecompass.incubator.callstack.core.tests.callgraph;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -142,6 +144,46 @@ public class FlameGraphDataProviderTest extends CallStackTestBase {
 
     }
 
+    /**
+     * Test that switching between the trees of different parameters does not
+     * rebuild them, and that the rows of each tree can still be fetched
+     *
+     * @throws IOException
+     *             if an I/O error occurs reading from the expected value file
+     *             or a malformed or unmappable byte sequence is read
+     */
+    @Test
+    public void testFlameGraphDataProviderCache() throws IOException {
+        CallStackAnalysisStub cga = getModule();
+
+        FlameGraphDataProvider<?, ?, ?> provider = new FlameGraphDataProvider<>(getTrace(), cga, cga.getId());
+
+        Map<@NonNull String, @NonNull Object> groupedParameters = new HashMap<>(TREE_PARAMETERS);
+        groupedParameters.put(FlameGraphDataProvider.GROUP_BY_KEY, AllGroupDescriptor.getInstance().getName());
+
+        TmfModelResponse<TmfTreeModel<@NonNull FlameChartEntryModel>> fullResponse = provider.fetchTree(TREE_PARAMETERS, null);
+        TmfModelResponse<TmfTreeModel<@NonNull FlameChartEntryModel>> groupedResponse = provider.fetchTree(groupedParameters, null);
+        assertSame(fullResponse, provider.fetchTree(TREE_PARAMETERS, null));
+        assertSame(groupedResponse, provider.fetchTree(groupedParameters, null));
+
+        // The rows of both trees are available
+        Map<Long, FlameChartEntryModel> fullIds = assertAndGetTree(provider, "expectedFgTreeFull", Collections.emptyMap());
+        Map<Long, FlameChartEntryModel> groupedIds = assertAndGetTree(provider, "expectedFgTreeOne", ImmutableMap.of(FlameGraphDataProvider.GROUP_BY_KEY, AllGroupDescriptor.getInstance().getName()));
+        assertRowsRequests(provider, fullIds, "Full", 19);
+        assertRowsRequests(provider, groupedIds, "One", 72);
+
+        // The rows requested without items are those of the tree for the
+        // parameters of the request, not of the last tree fetched
+        TmfModelResponse<TimeGraphModel> rowResponse = provider.fetchRowModel(ImmutableMap.of(DataProviderParameterUtils.REQUESTED_TIME_KEY, ImmutableList.of(0L, 18L)), null);
+        assertEquals(ITmfResponse.Status.COMPLETED, rowResponse.getStatus());
+        TimeGraphModel rowModel = rowResponse.getModel();
+        assertNotNull(rowModel);
+        assertFalse(rowModel.getRows().isEmpty());
+        for (ITimeGraphRowModel row : rowModel.getRows()) {
+            assertTrue(fullIds.containsKey(row.getEntryID()));
+        }
+    }
+
     private static void assertRowsRequests(FlameGraphDataProvider<?, ?, ?> provider, Map<Long, FlameChartEntryModel> idsToNames, String resultFileSuffix, long maxDuration) throws IOException {
         String filePrefix = "expectedFgRow" + resultFileSuffix;
         // Test getting all the states
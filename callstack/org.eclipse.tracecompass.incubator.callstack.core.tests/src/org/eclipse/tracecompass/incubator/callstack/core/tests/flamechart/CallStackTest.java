@@ -34,9 +34,12 @@ import org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesyste
 import org.eclipse.tracecompass.incubator.callstack.core.tests.stubs.CallStackAnalysisStub;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.InstrumentedCallStackElement;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CalledFunctionFactory;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Test the callstack data structure and traversal
  *
@@ -335,4 +338,43 @@ public class CallStackTest extends CallStackTestBase {
         assertNull(function);
 
     }
+
+    /**
+     * Test getting the call intervals of all depths with
+     * {@link CallStack#getCallIntervals(long, long, IProgressMonitor)}
+     */
+    @Test
+    public void testCallIntervals() {
+        CallStack element = getElementToTest();
+
+        // All the calls at all depths should be returned, sorted by time
+        List<ITmfStateInterval> intervals = ImmutableList.copyOf(element.getCallIntervals(START_TIME, END_TIME, MONITOR));
+        int expected = 0;
+        for (int depth = 1; depth <= element.getMaxDepth(); depth++) {
+            expected += element.getCallListAtDepth(depth, START_TIME, END_TIME, 1, MONITOR).size();
+        }
+        assertEquals(expected, intervals.size());
+        long previousStart = Long.MIN_VALUE;
+        for (ITmfStateInterval interval : intervals) {
+            assertTrue(interval.getStartTime() >= previousStart);
+            previousStart = interval.getStartTime();
+        }
+
+        // Reading the intervals in small time windows should give the same
+        // intervals, each one only once
+        assertEquals(intervals, ImmutableList.copyOf(element.getCallIntervals(START_TIME, END_TIME, 1, MONITOR)));
+
+        /*
+         * The range [4, 10] contains the end of the call (2, 6) and the start
+         * of the call (9, 13) at depth 2
+         */
+        intervals = ImmutableList.copyOf(element.getCallIntervals(4L, 10L, MONITOR));
+        long nbAtDepth2 = intervals.stream().filter(interval -> interval.getAttribute() == element.getQuarkAtDepth(2)).count();
+        assertEquals(2, nbAtDepth2);
+        assertEquals(intervals, ImmutableList.copyOf(element.getCallIntervals(4L, 10L, 1, MONITOR)));
+
+        // Test a range outside the trace range
+        intervals = ImmutableList.copyOf(element.getCallIntervals(END_TIME + 1, END_TIME + 3, MONITOR));
+        assertEquals(0, intervals.size());
+    }
 }
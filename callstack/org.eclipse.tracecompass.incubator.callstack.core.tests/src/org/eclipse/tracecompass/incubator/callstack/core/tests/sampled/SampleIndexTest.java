@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.tests.sampled;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.AllGroupDescriptor;
+import org.eclipse.tracecompass.incubator.callstack.core.base.CallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.AggregatedStackTraces;
+import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
+import org.eclipse.tracecompass.incubator.callstack.core.tests.flamechart.CallStackTestBase;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.sampled.callgraph.SampleIndex;
+import org.junit.Test;
+
+/**
+ * Test the {@link SampleIndex} class, comparing the call graphs it builds with
+ * the call graphs made by adding the callsite of each sample
+ */
+public class SampleIndexTest {
+
+    private static final long @NonNull [][] STACK_TRACES = {
+            { 1, 2, 3, 4 },
+            { 1, 2, 3 },
+            { 1, 2, 3, 4 },
+            { 1, 3, 4 },
+            { 1, 2, 5 },
+            { 1, 2, 5, 4 },
+            { 10, 11, 12 },
+            { 10, 11 },
+            { 1, 2, 3, 4 },
+            { 1, 2, 4, 5 } };
+
+    /**
+     * Test that the stack traces of addresses are aggregated like the
+     * callsites of the samples
+     */
+    @Test
+    public void testStackTraces() {
+        ICallStackElement element = new CallStackElement("test", AllGroupDescriptor.getInstance());
+        SampleIndex index = new SampleIndex(AggregatedStackTraces::new);
+        CallGraph expected = new CallGraph();
+        for (int i = 0; i < STACK_TRACES.length; i++) {
+            index.addSample(i, element, STACK_TRACES[i]);
+            expected.addAggregatedCallSite(element, getCallSite(element, STACK_TRACES[i], i));
+        }
+        // Empty stack traces are ignored
+        index.addSample(STACK_TRACES.length, element, new long[0]);
+        assertEquals(STACK_TRACES.length, index.size());
+        index.sort();
+
+        assertCallGraphEquals(expected, index.getCallGraph(Long.MIN_VALUE, Long.MAX_VALUE), element);
+    }
+
+    /**
+     * Test that samples added out of order are sorted, so that the call graph
+     * of a time range has all the samples of that range
+     */
+    @Test
+    public void testOutOfOrderSamples() {
+        ICallStackElement element = new CallStackElement("test", AllGroupDescriptor.getInstance());
+        SampleIndex index = new SampleIndex(AggregatedStackTraces::new);
+        long[] timestamps = { 5, 1, 3, 2, 4, 3, 8, 6, 7, 3 };
+        for (int i = 0; i < STACK_TRACES.length; i++) {
+            index.addSample(timestamps[i], element, STACK_TRACES[i]);
+        }
+        index.sort();
+
+        long[][] ranges = { { 3, 3 }, { 2, 4 }, { 0, 5 }, { 4, 20 }, { 9, 20 }, { Long.MIN_VALUE, Long.MAX_VALUE } };
+        for (long[] range : ranges) {
+            CallGraph expected = new CallGraph();
+            for (int i = 0; i < STACK_TRACES.length; i++) {
+                if (timestamps[i] >= range[0] && timestamps[i] <= range[1]) {
+                    expected.addAggregatedCallSite(element, getCallSite(element, STACK_TRACES[i], timestamps[i]));
+                }
+            }
+            assertCallGraphEquals(expected, index.getCallGraph(range[0], range[1]), element);
+        }
+    }
+
+    /**
+     * Test that the samples added as callsites get the weight of all the
+     * samples with the same callsite, whether they are chains of stack traces
+     * or trees
+     */
+    @Test
+    public void testCallSiteSamples() {
+        ICallStackElement element = new CallStackElement("test", AllGroupDescriptor.getInstance());
+        SampleIndex index = new SampleIndex(AggregatedStackTraces::new);
+
+        // A chain of stack traces, shared by the samples
+        AggregatedCallSite chain = getCallSite(element, new long[] { 1, 2, 3 }, 0);
+        // A tree with many children and weights, which cannot be shared
+        AggregatedCallSite tree = getCallSite(element, new long[] { 10, 11, 12 }, 0);
+        tree.merge(getCallSite(element, new long[] { 10, 13 }, 0));
+        tree.merge(getCallSite(element, new long[] { 10, 11 }, 0));
+
+        CallGraph expected = new CallGraph();
+        for (int i = 0; i < 4; i++) {
+            index.addSample(i, element, chain);
+            expected.addAggregatedCallSite(element, chain.copyOf());
+        }
+        for (int i = 0; i < 3; i++) {
+            index.addSample(i, element, tree);
+            expected.addAggregatedCallSite(element, tree.copyOf());
+        }
+        index.sort();
+
+        CallGraph callGraph = index.getCallGraph(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertCallGraphEquals(expected, callGraph, element);
+        for (AggregatedCallSite callsite : callGraph.getCallingContextTree(element)) {
+            String symbol = CallStackTestBase.getCallSiteSymbol(callsite).resolve(Collections.emptySet());
+            assertEquals(symbol, symbol.equals("0x1") ? 4 : 9, callsite.getWeight());
+        }
+
+        // The callsites that were added are not modified
+        assertEquals(1, chain.getWeight());
+        assertEquals(3, tree.getWeight());
+    }
+
+    private static AggregatedCallSite getCallSite(ICallStackElement element, long[] stackTrace, long timestamp) {
+        AggregatedCallSite callsite = new AggregatedStackTraces(CallStackSymbolFactory.createSymbol(stackTrace[stackTrace.length - 1], element, timestamp));
+        for (int i = stackTrace.length - 2; i >= 0; i--) {
+            AggregatedCallSite caller = new AggregatedStackTraces(CallStackSymbolFactory.createSymbol(stackTrace[i], element, timestamp));
+            caller.addChild(callsite);
+            callsite = caller;
+        }
+        return callsite;
+    }
+
+    /**
+     * Assert that two call graphs have the same callsites and weights for an
+     * element
+     *
+     * @param expected
+     *            The expected call graph
+     * @param actual
+     *            The actual call graph
+     * @param element
+     *            The element to compare
+     */
+    static void assertCallGraphEquals(CallGraph expected, CallGraph actual, ICallStackElement element) {
+        assertCallSitesEqual("", expected.getCallingContextTree(element), actual.getCallingContextTree(element));
+    }
+
+    private static void assertCallSitesEqual(String path, Collection<AggregatedCallSite> expected, Collection<AggregatedCallSite> actual) {
+        assertEquals(path, expected.size(), actual.size());
+        Map<String, AggregatedCallSite> actualBySymbol = new HashMap<>();
+        for (AggregatedCallSite callsite : actual) {
+            actualBySymbol.put(CallStackTestBase.getCallSiteSymbol(callsite).resolve(Collections.emptySet()), callsite);
+        }
+        for (AggregatedCallSite callsite : expected) {
+            String symbolPath = path + '/' + CallStackTestBase.getCallSiteSymbol(callsite).resolve(Collections.emptySet());
+            AggregatedCallSite actualCallsite = actualBySymbol.get(CallStackTestBase.getCallSiteSymbol(callsite).resolve(Collections.emptySet()));
+            assertNotNull(symbolPath, actualCallsite);
+            assertEquals(symbolPath, callsite.getWeight(), actualCallsite.getWeight());
+            assertCallSitesEqual(symbolPath, callsite.getCallees(), actualCallsite.getCallees());
+        }
+    }
+
+}
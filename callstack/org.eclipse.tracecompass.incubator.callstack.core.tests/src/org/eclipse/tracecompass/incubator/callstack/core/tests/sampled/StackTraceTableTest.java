@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.tests.sampled;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.AllGroupDescriptor;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IWeightedTreeGroupDescriptor;
+import org.eclipse.tracecompass.incubator.callstack.core.base.CallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.ProfilingCallGraphAnalysisModule;
+import org.eclipse.tracecompass.incubator.callstack.core.tests.flamechart.CallStackTestBase;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.sampled.callgraph.StackTraceTable;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.util.Pair;
+import org.junit.Test;
+
+/**
+ * Test the {@link StackTraceTable} class and the call graphs of time ranges
+ * aggregated from the interned stack traces of a profiling analysis
+ */
+public class StackTraceTableTest extends CallStackTestBase {
+
+    /**
+     * A profiling analysis whose samples are the events of the callstack test
+     * trace. The stack trace of an event is its thread ID followed by 1 for
+     * entries and 2 for exits, so the samples of a thread come in runs of
+     * identical stacks.
+     */
+    private static class TestProfilingAnalysis extends ProfilingCallGraphAnalysisModule {
+
+        private final Map<String, ICallStackElement> fElements = new HashMap<>();
+
+        @Override
+        public Collection<IWeightedTreeGroupDescriptor> getGroupDescriptors() {
+            return Collections.singleton(AllGroupDescriptor.getInstance());
+        }
+
+        @Override
+        public Map<String, Collection<Object>> getCallStack(@NonNull ITmfEvent event) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        protected @Nullable Pair<@NonNull ICallStackElement, @NonNull AggregatedCallSite> getProfiledStackTrace(@NonNull ITmfEvent event) {
+            return null;
+        }
+
+        @Override
+        protected @Nullable Pair<ICallStackElement, long[]> getProfiledStack(ITmfEvent event) {
+            String pid = event.getContent().getFieldValue(String.class, "pid");
+            String tid = event.getContent().getFieldValue(String.class, "tid");
+            if (pid == null || tid == null) {
+                return null;
+            }
+            ICallStackElement element = fElements.computeIfAbsent(pid, p -> {
+                ICallStackElement newElement = new CallStackElement(p, AllGroupDescriptor.getInstance());
+                addRootElement(newElement);
+                return newElement;
+            });
+            return new Pair<>(element, new long[] { Long.parseLong(tid), "entry".equals(event.getName()) ? 1 : 2 });
+        }
+
+        public Collection<ICallStackElement> getElements() {
+            return fElements.values();
+        }
+    }
+
+    /**
+     * Test that the same stack traces get the same stack IDs and that the
+     * frames of a stack can be read back
+     */
+    @Test
+    public void testStackIds() {
+        StackTraceTable table = new StackTraceTable();
+        assertEquals(StackTraceTable.NO_NODE, table.getStackId(0, new long[0], 1));
+
+        int stack1 = table.getStackId(0, new long[] { 1, 2, 3 }, 1);
+        int stack2 = table.getStackId(0, new long[] { 1, 2 }, 2);
+        int stack3 = table.getStackId(1, new long[] { 1, 2, 3 }, 3);
+        assertEquals(stack1, table.getStackId(0, new long[] { 1, 2, 3 }, 4));
+        assertNotEquals(stack1, stack3);
+        // The symbol key and the 3 frames of the first stack, the second
+        // stack is its caller and the third one has another symbol key
+        assertEquals(8, table.size());
+
+        assertEquals(3, table.getDepth(stack1));
+        assertEquals(0, table.getSymbolKey(stack1));
+        assertEquals(1, table.getSymbolKey(stack3));
+        assertEquals(3, table.getAddress(stack1));
+        // Frames are resolved at the time they were first seen
+        assertEquals(1, table.getTimestamp(stack1));
+        assertEquals(stack2, table.getCaller(stack1));
+        assertEquals(2, table.getAddress(stack2));
+        int bottom = table.getCaller(stack2);
+        assertEquals(1, table.getAddress(bottom));
+        assertEquals(StackTraceTable.NO_NODE, table.getCaller(bottom));
+
+        // Many stacks, to grow the table
+        for (int i = 0; i < 1000; i++) {
+            table.getStackId(2, new long[] { i, i + 1 }, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int stackId = table.getStackId(2, new long[] { i, i + 1 }, 0);
+            assertEquals(i + 1, table.getAddress(stackId));
+            assertEquals(i, table.getTimestamp(stackId));
+        }
+        assertEquals(stack1, table.getStackId(0, new long[] { 1, 2, 3 }, 5));
+    }
+
+    /**
+     * Test that the call graphs of time ranges aggregated from the interned
+     * stack traces are the same as those built while reading the events of
+     * the range, including ranges that start or end in the middle of runs of
+     * identical samples
+     *
+     * @throws TmfAnalysisException
+     *             Propagates exceptions
+     */
+    @Test
+    public void testRangeCallGraphs() throws TmfAnalysisException {
+        long[][] ranges = { { 1, 20 }, { 1, 1 }, { 2, 4 }, { 3, 6 }, { 5, 5 }, { 6, 11 }, { 10, 19 }, { 14, 14 }, { 0, 100 } };
+        TestProfilingAnalysis pg = new TestProfilingAnalysis();
+        try {
+            pg.setId("test.stacktrace.table");
+            assertTrue(pg.setTrace(getTrace()));
+
+            // Before the analysis is executed, the events of the range are read
+            Map<long[], CallGraph> expected = new HashMap<>();
+            for (long[] range : ranges) {
+                expected.put(range, pg.getCallGraph(TmfTimestamp.fromNanos(range[0]), TmfTimestamp.fromNanos(range[1])));
+            }
+
+            pg.schedule();
+            assertTrue(pg.waitForCompletion());
+            assertEquals(2, pg.getElements().size());
+            for (long[] range : ranges) {
+                CallGraph callGraph = pg.getCallGraph(TmfTimestamp.fromNanos(range[0]), TmfTimestamp.fromNanos(range[1]));
+                for (ICallStackElement element : pg.getElements()) {
+                    SampleIndexTest.assertCallGraphEquals(expected.get(range), callGraph, element);
+                }
+            }
+            for (ICallStackElement element : pg.getElements()) {
+                SampleIndexTest.assertCallGraphEquals(expected.get(ranges[0]), pg.getCallGraph(), element);
+            }
+        } finally {
+            pg.dispose();
+        }
+    }
+
+}
@@ -14,7 +14,12 @@ package org.eclipse.tracecompass.incubator.callstack.core.flamechart;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -37,6 +42,9 @@ import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedE
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+
 /**
  * Represents the actual callstack for one element. The callstack is a stack of
  * calls, whether function calls, executions, sub-routines that have a certain
@@ -50,6 +58,17 @@ import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
  */
 public class CallStack {
 
+    /**
+     * Approximate number of call intervals read from the state system at a
+     * time
+     */
+    private static final int CALL_INTERVALS_WINDOW_SIZE = 10000;
+    /**
+     * Number of time windows in which the call intervals of a range are read
+     * at first, the window duration is then adjusted to the density of calls
+     */
+    private static final int CALL_INTERVALS_INITIAL_WINDOWS = 16;
+
     private final @Nullable ICallStackElement fSymbolKeyElement;
     private final @Nullable IThreadIdProvider fThreadIdProvider;
     private final ITmfStateSystem fStateSystem;
@@ -134,6 +153,125 @@ public class CallStack {
         }
     }
 
+    /**
+     * Get the non-null function call intervals at all depths of this callstack
+     * that intersect a time range. The intervals are read from the state
+     * system with 2D queries on consecutive time windows instead of one query
+     * per function, so the history is read sequentially, and only the
+     * intervals of one window are kept in memory at a time.
+     *
+     * @param startTime
+     *            The start of the period for which to get the intervals
+     * @param endTime
+     *            The end of the period for which to get the intervals
+     * @param monitor
+     *            The progress monitor to follow the progress of this query
+     * @return The intervals, sorted by start time then by depth, so that a
+     *         function's interval always comes before the ones of its callees.
+     *         The state system is queried as the intervals are iterated.
+     */
+    public Iterable<ITmfStateInterval> getCallIntervals(long startTime, long endTime, IProgressMonitor monitor) {
+        return getCallIntervals(startTime, endTime, CALL_INTERVALS_WINDOW_SIZE, monitor);
+    }
+
+    /**
+     * Get the non-null function call intervals at all depths of this
+     * callstack, with a given number of intervals per time window
+     *
+     * @param startTime
+     *            The start of the period for which to get the intervals
+     * @param endTime
+     *            The end of the period for which to get the intervals
+     * @param windowSize
+     *            The approximate number of intervals to read at a time, the
+     *            duration of the time windows is adjusted to read about this
+     *            number of intervals in each
+     * @param monitor
+     *            The progress monitor to follow the progress of this query
+     * @return The intervals, sorted by start time then by depth
+     * @see #getCallIntervals(long, long, IProgressMonitor)
+     */
+    @VisibleForTesting
+    public Iterable<ITmfStateInterval> getCallIntervals(long startTime, long endTime, int windowSize, IProgressMonitor monitor) {
+        long start = Math.max(fStateSystem.getStartTime(), startTime);
+        long end = Math.min(fStateSystem.getCurrentEndTime(), endTime);
+        if (start > end || fQuarks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, Integer> depths = getQuarkDepths();
+        return () -> new CallIntervalIterator(depths, start, end, Math.max(1, windowSize), monitor);
+    }
+
+    /**
+     * Iterator over the call intervals of a time range, which queries the
+     * state system one time window at a time. An interval is returned with the
+     * first window it intersects, so the intervals that start before a window
+     * are skipped, except in the first window.
+     */
+    private class CallIntervalIterator extends AbstractIterator<ITmfStateInterval> {
+
+        private final Map<Integer, Integer> fDepths;
+        private final long fEnd;
+        private final int fWindowSize;
+        private final IProgressMonitor fMonitor;
+        private final Comparator<ITmfStateInterval> fComparator;
+        private Iterator<ITmfStateInterval> fWindow = Collections.emptyIterator();
+        private long fWindowStart;
+        private long fWindowWidth;
+        private boolean fFirstWindow = true;
+
+        public CallIntervalIterator(Map<Integer, Integer> depths, long start, long end, int windowSize, IProgressMonitor monitor) {
+            fDepths = depths;
+            fEnd = end;
+            fWindowSize = windowSize;
+            fMonitor = monitor;
+            fComparator = Comparator.comparingLong(ITmfStateInterval::getStartTime)
+                    .thenComparingInt(interval -> Objects.requireNonNull(depths.get(interval.getAttribute())));
+            fWindowStart = start;
+            fWindowWidth = Math.max(1, (end - start) / CALL_INTERVALS_INITIAL_WINDOWS);
+        }
+
+        @Override
+        protected @Nullable ITmfStateInterval computeNext() {
+            while (!fWindow.hasNext()) {
+                if (fWindowStart > fEnd || fMonitor.isCanceled()) {
+                    return endOfData();
+                }
+                long windowEnd = (fEnd - fWindowStart < fWindowWidth) ? fEnd : fWindowStart + fWindowWidth - 1;
+                List<ITmfStateInterval> intervals = new ArrayList<>();
+                try {
+                    for (ITmfStateInterval interval : fStateSystem.query2D(fDepths.keySet(), fWindowStart, windowEnd)) {
+                        if (fMonitor.isCanceled()) {
+                            return endOfData();
+                        }
+                        // Intervals starting before the window were returned with a previous one
+                        if (!interval.getStateValue().isNull() && (fFirstWindow || interval.getStartTime() >= fWindowStart)) {
+                            intervals.add(interval);
+                        }
+                    }
+                } catch (StateSystemDisposedException | TimeRangeException e) {
+                    return endOfData();
+                }
+                intervals.sort(fComparator);
+                // Adjust the next window to read about the requested number of intervals
+                double ratio = intervals.isEmpty() ? 2.0 : Math.min(2.0, (double) fWindowSize / intervals.size());
+                fWindowWidth = (long) Math.max(1, Math.min(Long.MAX_VALUE / 4, fWindowWidth * ratio));
+                fWindowStart = windowEnd + 1;
+                fFirstWindow = false;
+                fWindow = intervals.iterator();
+            }
+            return fWindow.next();
+        }
+    }
+
+    private Map<Integer, Integer> getQuarkDepths() {
+        Map<Integer, Integer> depths = new HashMap<>();
+        for (int i = 0; i < fQuarks.size(); i++) {
+            depths.put(fQuarks.get(i), i + 1);
+        }
+        return depths;
+    }
+
     /**
      * Get the quark for a given depth
      *
@@ -509,6 +647,43 @@ public class CallStack {
         return model.getThreadStatusIntervals(function.getThreadId(), function.getStart(), function.getEnd(), resolution);
     }
 
+    /**
+     * Get the kernel statuses that span many functions at once. The statuses
+     * of the functions of each thread are read in a single pass.
+     *
+     * @param functions
+     *            The functions for which to get the kernel statuses, sorted by
+     *            start time
+     * @return The kernel statuses of each function, in the order of the
+     *         functions. The statuses of a function are empty if they are not
+     *         available.
+     */
+    public List<List<ProcessStatusInterval>> getKernelStatuses(List<ICalledFunction> functions) {
+        // Group the functions by model and thread, keeping them sorted
+        Map<IHostModel, Map<Integer, List<Integer>>> groups = new HashMap<>();
+        for (int i = 0; i < functions.size(); i++) {
+            ICalledFunction function = functions.get(i);
+            IHostModel model = ModelManager.getModelFor(getHostId(function.getStart()));
+            groups.computeIfAbsent(model, m -> new HashMap<>()).computeIfAbsent(function.getThreadId(), tid -> new ArrayList<>()).add(i);
+        }
+        List<List<ProcessStatusInterval>> statuses = new ArrayList<>(Collections.nCopies(functions.size(), Collections.emptyList()));
+        for (Entry<IHostModel, Map<Integer, List<Integer>>> modelGroup : groups.entrySet()) {
+            IHostModel model = modelGroup.getKey();
+            for (Entry<Integer, List<Integer>> threadGroup : modelGroup.getValue().entrySet()) {
+                List<Integer> indexes = threadGroup.getValue();
+                List<ICalledFunction> windows = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    windows.add(functions.get(index));
+                }
+                List<List<ProcessStatusInterval>> threadStatuses = model.getThreadStatusIntervals(threadGroup.getKey(), windows);
+                for (int i = 0; i < indexes.size(); i++) {
+                    statuses.set(indexes.get(i), threadStatuses.get(i));
+                }
+            }
+        }
+        return statuses;
+    }
+
     /**
      * Transforms a state interval from the state system into a
      * {@link ICalledFunction}. The function allows to retrieve data from this
@@ -16,6 +16,9 @@ package org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesyst
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.tracecompass.incubator.analysis.core.aspects.ProcessNameAspect;
@@ -110,8 +113,37 @@ public abstract class CallStackStateProvider extends AbstractTmfStateProvider {
     /** CallStack state system ID */
     private static final String ID = "org.eclipse.linuxtools.tmf.callstack"; //$NON-NLS-1$
 
+    /**
+     * The callstack quark of a thread, with the process and thread it was
+     * resolved for
+     */
+    private static final class ThreadCallStack {
+        private final int fPid;
+        private final String fProcessName;
+        private final String fThreadName;
+        private final int fQuark;
+
+        public ThreadCallStack(int pid, String processName, String threadName, int quark) {
+            fPid = pid;
+            fProcessName = processName;
+            fThreadName = threadName;
+            fQuark = quark;
+        }
+
+        public boolean matches(int pid, String processName, String threadName) {
+            return fPid == pid && fThreadName.equals(threadName) && fProcessName.equals(processName);
+        }
+    }
+
     private boolean fHasErrors = false;
 
+    /*
+     * The callstack quarks by thread ID, to avoid resolving the attribute path
+     * at each event. An entry is replaced when the thread is seen with another
+     * process or other names, like after a rename or an exec.
+     */
+    private final Map<Long, ThreadCallStack> fCallStacks = new HashMap<>();
+
     /**
      * Default constructor
      *
@@ -145,19 +177,26 @@ public abstract class CallStackStateProvider extends AbstractTmfStateProvider {
             if (processName == null) {
                 processName = (processId == UNKNOWN_PID) ? UNKNOWN : Integer.toString(processId);
             }
-            int processQuark = ss.getQuarkAbsoluteAndAdd(PROCESSES, processName);
-            ss.updateOngoingState(TmfStateValue.newValueInt(processId), processQuark);
-
             String threadName = getThreadName(event);
             long threadId = getThreadId(event);
             if (threadName == null) {
                 threadName = Long.toString(threadId);
             }
-            int threadQuark = ss.getQuarkRelativeAndAdd(processQuark, threadName);
-            ss.updateOngoingState(TmfStateValue.newValueLong(threadId), threadQuark);
 
-            int callStackQuark = ss.getQuarkRelativeAndAdd(threadQuark, InstrumentedCallStackAnalysis.CALL_STACK);
-            ss.pushAttribute(timestamp, functionEntryName, callStackQuark);
+            ThreadCallStack callStack = fCallStacks.get(threadId);
+            if (callStack == null || !callStack.matches(processId, processName, threadName)) {
+                // New thread, or the thread was renamed or did an exec
+                int processQuark = ss.getQuarkAbsoluteAndAdd(PROCESSES, processName);
+                ss.updateOngoingState(TmfStateValue.newValueInt(processId), processQuark);
+
+                int threadQuark = ss.getQuarkRelativeAndAdd(processQuark, threadName);
+                ss.updateOngoingState(TmfStateValue.newValueLong(threadId), threadQuark);
+
+                int callStackQuark = ss.getQuarkRelativeAndAdd(threadQuark, InstrumentedCallStackAnalysis.CALL_STACK);
+                callStack = new ThreadCallStack(processId, processName, threadName, callStackQuark);
+                fCallStacks.put(threadId, callStack);
+            }
+            ss.pushAttribute(timestamp, functionEntryName, callStack.fQuark);
             return;
         }
     }
@@ -168,16 +207,19 @@ public abstract class CallStackStateProvider extends AbstractTmfStateProvider {
         // FIXME: since
         if (functionExitState != null) {
             long timestamp = event.getTimestamp().toNanos();
+            int processId = getProcessId(event);
             String processName = getProcessName(event);
             if (processName == null) {
-                int processId = getProcessId(event);
                 processName = (processId == UNKNOWN_PID) ? UNKNOWN : Integer.toString(processId);
             }
+            long threadId = getThreadId(event);
             String threadName = getThreadName(event);
             if (threadName == null) {
-                threadName = Long.toString(getThreadId(event));
+                threadName = Long.toString(threadId);
             }
-            int quark = ss.getQuarkAbsoluteAndAdd(PROCESSES, processName, threadName, InstrumentedCallStackAnalysis.CALL_STACK);
+            ThreadCallStack callStack = fCallStacks.get(threadId);
+            int quark = (callStack != null && callStack.matches(processId, processName, threadName)) ? callStack.fQuark
+                    : ss.getQuarkAbsoluteAndAdd(PROCESSES, processName, threadName, InstrumentedCallStackAnalysis.CALL_STACK);
             Object poppedValue = ss.popAttributeObject(timestamp, quark);
             /*
              * Verify that the value we are popping matches the one in the
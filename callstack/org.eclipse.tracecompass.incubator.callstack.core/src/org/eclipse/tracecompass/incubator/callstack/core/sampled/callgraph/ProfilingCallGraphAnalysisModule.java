@@ -28,6 +28,7 @@ import org.eclipse.tracecompass.incubator.callstack.core.flamechart.IEventCallSt
 import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.Activator;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.Messages;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.sampled.callgraph.SampleIndex;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
@@ -42,6 +43,10 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
 import org.eclipse.tracecompass.tmf.core.util.Pair;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 /**
  * The callgraph analysis module
  *
@@ -55,6 +60,21 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
     private final Set<ICallStackElement> fRootElements = new HashSet<>();
 
     private @Nullable CallGraph fFullRangeCallGraph;
+    // Index of the samples read during the analysis, to build the call graph
+    // of time ranges without reading the trace again
+    private volatile @Nullable SampleIndex fSampleIndex = null;
+    private final LoadingCache<TmfTimeRange, CallGraph> fRangeCallGraphs = Objects.requireNonNull(CacheBuilder.newBuilder()
+            .maximumSize(10)
+            .build(new CacheLoader<TmfTimeRange, CallGraph>() {
+                @Override
+                public CallGraph load(TmfTimeRange range) {
+                    SampleIndex index = fSampleIndex;
+                    if (index == null) {
+                        return CallGraph.EMPTY_GRAPH;
+                    }
+                    return index.getCallGraph(range.getStartTime().toNanos(), range.getEndTime().toNanos());
+                }
+            }));
     private @Nullable Collection<ISymbolProvider> fSymbolProviders = null;
 
     /**
@@ -78,7 +98,12 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
 
     @Override
     public CallGraph getCallGraph(ITmfTimestamp start, ITmfTimestamp end) {
-        CallGraph cg = executeForRange(new TmfTimeRange(start, end));
+        TmfTimeRange range = new TmfTimeRange(start, end);
+        if (fSampleIndex != null) {
+            return fRangeCallGraphs.getUnchecked(range);
+        }
+        // The analysis is not done yet, read the events of the range
+        CallGraph cg = executeForRange(range, null);
         if (cg == null) {
             return CallGraph.EMPTY_GRAPH;
         }
@@ -163,17 +188,38 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
      */
     protected abstract @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(ITmfEvent event);
 
+    /**
+     * Get the stack trace of an event as an array of addresses, in the same
+     * order as for {@link #getCallSite(ICallStackElement, long[], long)}.
+     * Stack traces returned by this method are interned by the analysis, so
+     * that identical stack traces do not create new callsites for each sample.
+     * Analyses whose samples are addresses should override it. If it returns
+     * <code>null</code>, {@link #getProfiledStackTrace(ITmfEvent)} is used
+     * instead.
+     *
+     * @param event
+     *            The trace event to process
+     * @return A pair of callstack element and stack trace from this event, or
+     *         <code>null</code> to get the callsite of the event
+     */
+    protected @Nullable Pair<ICallStackElement, long[]> getProfiledStack(ITmfEvent event) {
+        return null;
+    }
+
     @Override
     protected boolean executeAnalysis(@NonNull IProgressMonitor monitor) throws TmfAnalysisException {
-        CallGraph callgraph = executeForRange(TmfTimeRange.ETERNITY);
-        if (callgraph == null) {
+        SampleIndex index = new SampleIndex(this::createCallSite);
+        if (executeForRange(TmfTimeRange.ETERNITY, index) == null) {
             return false;
         }
-        fFullRangeCallGraph = callgraph;
+        index.sort();
+        fFullRangeCallGraph = index.getCallGraph(Long.MIN_VALUE, Long.MAX_VALUE);
+        fRangeCallGraphs.invalidateAll();
+        fSampleIndex = index;
         return true;
     }
 
-    private @Nullable CallGraph executeForRange(TmfTimeRange range) {
+    private @Nullable CallGraph executeForRange(TmfTimeRange range, @Nullable SampleIndex index) {
         ITmfTrace trace = getTrace();
         if (trace == null) {
             throw new NullPointerException("Trace has not been set, yet the analysis is being run!"); //$NON-NLS-1$
@@ -186,7 +232,7 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
 
         try {
             CallGraph callGraph = new CallGraph();
-            request = new ProfilingEventRequest(trace, callGraph, range);
+            request = new ProfilingEventRequest(trace, callGraph, range, index);
             fRequest = request;
             trace.sendRequest(request);
 
@@ -213,6 +259,7 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
 
         private final ITmfTrace fTrace;
         private final CallGraph fCallGraph;
+        private final @Nullable SampleIndex fIndex;
 
         /**
          * Constructor
@@ -223,8 +270,11 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
          *            The callgraph to fill
          * @param range
          *            The time range of this request
+         * @param index
+         *            The index to fill with the samples instead of the
+         *            callgraph, or <code>null</code> to fill the callgraph
          */
-        public ProfilingEventRequest(ITmfTrace trace, CallGraph callgraph, TmfTimeRange range) {
+        public ProfilingEventRequest(ITmfTrace trace, CallGraph callgraph, TmfTimeRange range, @Nullable SampleIndex index) {
             super(TmfEvent.class,
                     range,
                     0,
@@ -232,6 +282,7 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
                     ITmfEventRequest.ExecutionType.BACKGROUND);
             fTrace = trace;
             fCallGraph = callgraph;
+            fIndex = index;
         }
 
         @Override
@@ -253,11 +304,26 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
         }
 
         private void processEvent(ITmfEvent event) {
+            SampleIndex index = fIndex;
+            long timestamp = event.getTimestamp().toNanos();
+            Pair<ICallStackElement, long[]> stack = getProfiledStack(event);
+            if (stack != null) {
+                if (index != null) {
+                    index.addSample(timestamp, stack.getFirst(), stack.getSecond());
+                } else if (stack.getSecond().length > 0) {
+                    fCallGraph.addAggregatedCallSite(stack.getFirst(), getCallSite(stack.getFirst(), stack.getSecond(), timestamp));
+                }
+                return;
+            }
             Pair<ICallStackElement, AggregatedCallSite> perfCallSite = getProfiledStackTrace(event);
             if (perfCallSite == null) {
                 return;
             }
-            fCallGraph.addAggregatedCallSite(perfCallSite.getFirst(), perfCallSite.getSecond());
+            if (index != null) {
+                index.addSample(timestamp, perfCallSite.getFirst(), perfCallSite.getSecond());
+            } else {
+                fCallGraph.addAggregatedCallSite(perfCallSite.getFirst(), perfCallSite.getSecond());
+            }
         }
     }
 
@@ -11,26 +11,27 @@
 
 package org.eclipse.tracecompass.incubator.internal.callstack.core.flamegraph;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -38,7 +39,6 @@ import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.FlowScopeLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.FlowScopeLogBuilder;
-import org.eclipse.tracecompass.datastore.core.serialization.ISafeByteBufferWriter;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.AllGroupDescriptor;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IDataPalette;
@@ -49,19 +49,11 @@ import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IWeightedT
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IWeightedTreeSet;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTreeGroupBy;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.Activator;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.provider.FlameChartEntryModel;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.provider.FlameChartEntryModel.EntryType;
-import org.eclipse.tracecompass.internal.provisional.statesystem.core.statevalue.CustomStateValue;
 import org.eclipse.tracecompass.internal.tmf.core.model.AbstractTmfTraceDataProvider;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
-import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
-import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
-import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
-import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
-import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
-import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
-import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
-import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
 import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
@@ -79,13 +71,13 @@ import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
 import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
-import org.eclipse.tracecompass.tmf.core.util.Pair;
 
-import com.google.common.collect.HashMultimap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
  * A data provider for flame graphs, using a {@link IWeightedTreeProvider} as
@@ -127,38 +119,48 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
      */
     public static final String TOOLTIP_ACTION_KEY = "actions"; //$NON-NLS-1$
     private static final AtomicLong ENTRY_ID = new AtomicLong();
+    /**
+     * The maximum weight of the cached trees, the weight of a tree being its
+     * number of entries and of laid out weighted trees
+     */
+    private static final long MAX_CACHE_WEIGHT = 2000000;
     private final Comparator<WeightedTree<N>> CCT_COMPARATOR2 = Comparator.comparing(WeightedTree<N>::getWeight).thenComparing(s -> String.valueOf(s.getObject()));
     /**
      * Logger for Abstract Tree Data Providers.
      */
     private static final Logger LOGGER = TraceCompassLog.getLogger(FlameGraphDataProvider.class);
 
-    /* State System attributes for the root levels */
-    private static final String FUNCTION_LEVEL = "::Function"; //$NON-NLS-1$
-
     private final IWeightedTreeProvider<N, E, T> fWtProvider;
 
     private final String fAnalysisId;
     private final long fTraceId = ENTRY_ID.getAndIncrement();
 
-    private final ReentrantReadWriteLock fLock = new ReentrantReadWriteLock(false);
-    private @Nullable Pair<CacheKey, TmfModelResponse<TmfTreeModel<FlameChartEntryModel>>> fCached;
-    private final Map<Long, FlameChartEntryModel> fEntries = new HashMap<>();
-    private final Map<Long, WeightedTreeEntry> fCgEntries = new HashMap<>();
-    private final Map<Long, Long> fEndTimes = new HashMap<>();
+    private final Cache<CacheKey, CachedTree> fCachedTrees = Objects.requireNonNull(CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(MAX_CACHE_WEIGHT)
+            .weigher((CacheKey key, CachedTree tree) -> tree.getWeight())
+            .build());
+    // The last tree returned, kept even if it is too large for the cache
+    private volatile @Nullable CachedTree fLastTree = null;
 
+    /**
+     * The key of a tree, made of the parameters the tree depends on, so that
+     * the row and tooltip requests find the tree of their own parameters
+     */
     private class CacheKey {
-        private final Map<String, Object> fParameters;
-        private final IWeightedTreeSet<N, Object, WeightedTree<N>> fTreeSet;
+        private final @Nullable List<Long> fSelectionRange;
+        private final @Nullable Object fGroupBy;
+        private final IWeightedTreeSet<N, E, T> fTreeSet;
 
-        public CacheKey(Map<String, Object> parameters, IWeightedTreeSet<N, Object, WeightedTree<N>> treeset) {
-            fParameters = parameters;
+        public CacheKey(Map<String, Object> parameters, IWeightedTreeSet<N, E, T> treeset) {
+            fSelectionRange = DataProviderParameterUtils.extractLongList(parameters, SELECTION_RANGE_KEY);
+            fGroupBy = parameters.get(GROUP_BY_KEY);
             fTreeSet = treeset;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(fParameters, fTreeSet);
+            return Objects.hash(fSelectionRange, fGroupBy, fTreeSet);
         }
 
         @Override
@@ -166,54 +168,49 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             if (!(obj instanceof FlameGraphDataProvider.CacheKey)) {
                 return false;
             }
-            return Objects.equals(fParameters, ((FlameGraphDataProvider.CacheKey) obj).fParameters)
-                    && Objects.equals(fTreeSet, ((FlameGraphDataProvider.CacheKey) obj).fTreeSet);
+            FlameGraphDataProvider<?, ?, ?>.CacheKey other = (FlameGraphDataProvider<?, ?, ?>.CacheKey) obj;
+            return Objects.equals(fSelectionRange, other.fSelectionRange)
+                    && Objects.equals(fGroupBy, other.fGroupBy)
+                    && Objects.equals(fTreeSet, other.fTreeSet);
         }
 
 
     }
 
-    /** An internal class to describe the data for an entry */
-    private class WeightedTreeEntry {
-        private ITmfStateSystem fSs;
-        private Integer fQuark;
-
-        public WeightedTreeEntry(ITmfStateSystem ss, Integer quark) {
-            fSs = ss;
-            fQuark = quark;
-        }
-    }
-
-    private static class CalleeCustomValue<@NonNull N> extends CustomStateValue {
-        private WeightedTree<N> fCallSite;
-
-        public CalleeCustomValue(WeightedTree<N> rootFunction) {
-            fCallSite = rootFunction;
-        }
-
-        @Override
-        public int compareTo(ITmfStateValue o) {
-            if (!(o instanceof CalleeCustomValue)) {
-                return -1;
+    /** A tree response in the cache, with the entries it returned */
+    private class CachedTree {
+        private final TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fResponse;
+        private final Map<Long, WeightedTreeEntry> fCgEntries;
+        private final int fWeight;
+
+        public CachedTree(TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> response, List<FlameChartEntryModel> entries, Map<Long, WeightedTreeEntry> cgEntries) {
+            fResponse = response;
+            fCgEntries = cgEntries;
+            // The weight is the number of entries and of laid out trees
+            long weight = entries.size();
+            Set<FlameGraphLayout<N>> layouts = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (WeightedTreeEntry cgEntry : cgEntries.values()) {
+                if (layouts.add(cgEntry.fLayout)) {
+                    weight += cgEntry.fLayout.size();
+                }
             }
-            return fCallSite.compareTo(((CalleeCustomValue) o).fCallSite);
+            fWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, weight));
         }
 
-        @Override
-        protected Byte getCustomTypeId() {
-            return 103;
+        public int getWeight() {
+            return fWeight;
         }
+    }
 
-        @Override
-        protected void serializeValue(ISafeByteBufferWriter buffer) {
-            throw new UnsupportedOperationException("This state value is not meant to be written to disk"); //$NON-NLS-1$
-        }
+    /** An internal class to describe the data for an entry */
+    private class WeightedTreeEntry {
+        private final FlameGraphLayout<N> fLayout;
+        private final FlameGraphLayout.Row fRow;
 
-        @Override
-        protected int getSerializedValueSize() {
-            throw new UnsupportedOperationException("This state value is not meant to be written to disk"); //$NON-NLS-1$
+        public WeightedTreeEntry(FlameGraphLayout<N> layout, FlameGraphLayout.Row row) {
+            fLayout = layout;
+            fRow = row;
         }
-
     }
 
     /**
@@ -240,7 +237,6 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
     @Override
     public @NonNull TmfModelResponse<@NonNull TmfTreeModel<@NonNull FlameChartEntryModel>> fetchTree(@NonNull Map<@NonNull String, @NonNull Object> fetchParameters, @Nullable IProgressMonitor monitor) {
 
-        fLock.writeLock().lock();
         try (FlowScopeLog scope = new FlowScopeLogBuilder(LOGGER, Level.FINE, "FlameGraphDataProvider#fetchTree") //$NON-NLS-1$
                 .setCategory(getClass().getSimpleName()).build()) {
             // Did we cache this tree with those parameters and the callgraph?
@@ -248,61 +244,86 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             // may vary if the analysis was done again, we need to cache for
             // callgraph as well
             SubMonitor subMonitor = Objects.requireNonNull(SubMonitor.convert(monitor, "FlameGraphDataProvider#fetchRowModel", 2)); //$NON-NLS-1$
-            IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph = getCallGraph(fetchParameters, subMonitor);
-            if (callGraph == null) {
-                return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, CommonStatusMessage.TASK_CANCELLED);
-            }
-
-            CacheKey cacheKey = new CacheKey(fetchParameters, callGraph);
-            Pair<CacheKey, TmfModelResponse<TmfTreeModel<FlameChartEntryModel>>> cached = fCached;
-            if (cached != null && cached.getFirst().equals(cacheKey)) {
-                return cached.getSecond();
-            }
-
-            fEntries.clear();
-            fCgEntries.clear();
-
-            if (subMonitor.isCanceled()) {
+            CachedTree cached = getTree(fetchParameters, subMonitor);
+            if (cached == null) {
                 return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
             }
+            return cached.fResponse;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Activator.getInstance().logError("Error building the flame graph", e.getCause()); //$NON-NLS-1$
+            return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, String.valueOf(e.getMessage()));
+        }
+    }
 
-            long start = 0;
+    /**
+     * Get the tree for the parameters of a request, from the cache or built
+     * for this request. Only the requests for the same tree wait for one
+     * another, the others are served or computed concurrently.
+     *
+     * @return The tree, or <code>null</code> if the request was cancelled
+     */
+    private @Nullable CachedTree getTree(Map<String, Object> fetchParameters, SubMonitor subMonitor) throws ExecutionException {
+        IWeightedTreeSet<N, E, T> treeSet = getTreeSet(fetchParameters, subMonitor);
+        if (treeSet == null) {
+            return null;
+        }
+        CacheKey cacheKey = new CacheKey(fetchParameters, treeSet);
+        while (!subMonitor.isCanceled()) {
+            try {
+                CachedTree cached = fCachedTrees.get(cacheKey, () -> buildTree(fetchParameters, treeSet, subMonitor));
+                fLastTree = cached;
+                return cached;
+            } catch (UncheckedExecutionException e) {
+                if (!(e.getCause() instanceof OperationCanceledException)) {
+                    throw e;
+                }
+                // The build this request waited for was cancelled and is not
+                // cached, build the tree again unless this request is
+                // cancelled too
+            }
+        }
+        return null;
+    }
 
-            // Initialize the first element of the tree
-            List<FlameChartEntryModel.Builder> builder = new ArrayList<>();
-            FlameChartEntryModel.Builder traceEntry = new FlameChartEntryModel.Builder(fTraceId, -1, getTrace().getName(), start, FlameChartEntryModel.EntryType.TRACE, -1);
+    /**
+     * Build a tree, the build throws an {@link OperationCanceledException} if
+     * it is cancelled, so that the cache does not keep it
+     */
+    private CachedTree buildTree(Map<String, Object> fetchParameters, IWeightedTreeSet<N, E, T> treeSet, SubMonitor subMonitor) {
+        IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph = groupTreeSet(fetchParameters, treeSet);
+        Map<Long, WeightedTreeEntry> cgEntries = new HashMap<>();
 
-            buildWeightedTreeEntries(callGraph, builder, traceEntry);
+        if (subMonitor.isCanceled()) {
+            throw new OperationCanceledException();
+        }
 
-            ImmutableList.Builder<FlameChartEntryModel> treeBuilder = ImmutableList.builder();
-            long end = traceEntry.getEndTime();
-            for (FlameChartEntryModel.Builder builderEntry : builder) {
-                treeBuilder.add(builderEntry.build());
-                end = Math.max(end, builderEntry.getEndTime());
-            }
-            traceEntry.setEndTime(end);
-            treeBuilder.add(traceEntry.build());
-            List<FlameChartEntryModel> tree = treeBuilder.build();
+        long start = 0;
 
-            tree.forEach(entry -> {
-                fEntries.put(entry.getId(), entry);
-                fEndTimes.put(entry.getId(), entry.getEndTime());
-            });
+        // Initialize the first element of the tree
+        List<FlameChartEntryModel.Builder> builder = new ArrayList<>();
+        FlameChartEntryModel.Builder traceEntry = new FlameChartEntryModel.Builder(fTraceId, -1, getTrace().getName(), start, FlameChartEntryModel.EntryType.TRACE, -1);
 
-            TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> response = new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree),
-                    ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
-            fCached = new Pair<>(cacheKey, response);
-            return response;
+        buildWeightedTreeEntries(callGraph, builder, traceEntry, cgEntries);
 
-        } finally {
-            fLock.writeLock().unlock();
+        ImmutableList.Builder<FlameChartEntryModel> treeBuilder = ImmutableList.builder();
+        long end = traceEntry.getEndTime();
+        for (FlameChartEntryModel.Builder builderEntry : builder) {
+            treeBuilder.add(builderEntry.build());
+            end = Math.max(end, builderEntry.getEndTime());
         }
+        traceEntry.setEndTime(end);
+        treeBuilder.add(traceEntry.build());
+        List<FlameChartEntryModel> tree = treeBuilder.build();
+
+        TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> response = new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree),
+                ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
+        return new CachedTree(response, tree, cgEntries);
     }
 
     /**
-     * @param fetchParameters
+     * Get the full or selection tree set of the weighted tree provider
      */
-    private @Nullable IWeightedTreeSet<N, Object, WeightedTree<N>> getCallGraph(Map<String, Object> fetchParameters, SubMonitor subMonitor) {
+    private @Nullable IWeightedTreeSet<N, E, T> getTreeSet(Map<String, Object> fetchParameters, SubMonitor subMonitor) {
         // Get the provider and wait for the analysis completion
         IWeightedTreeProvider<N, E, T> wtProvider = fWtProvider;
         if (wtProvider instanceof IAnalysisModule) {
@@ -314,19 +335,20 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
 
         // Get the full or selection callgraph
         List<Long> selectionRange = DataProviderParameterUtils.extractLongList(fetchParameters, SELECTION_RANGE_KEY);
-        IWeightedTreeSet<@NonNull N, E, @NonNull T> callGraph;
         if (selectionRange == null || selectionRange.size() != 2) {
-            callGraph = wtProvider.getTreeSet();
-        } else {
-            long time0 = selectionRange.get(0);
-            long time1 = selectionRange.get(1);
-            callGraph = wtProvider.getSelection(TmfTimestamp.fromNanos(Math.min(time0, time1)), TmfTimestamp.fromNanos(Math.max(time0, time1)));
-        }
-        if (callGraph == null) {
-            return null;
+            return wtProvider.getTreeSet();
         }
+        long time0 = selectionRange.get(0);
+        long time1 = selectionRange.get(1);
+        return wtProvider.getSelection(TmfTimestamp.fromNanos(Math.min(time0, time1)), TmfTimestamp.fromNanos(Math.max(time0, time1)));
+    }
 
+    /**
+     * Group the tree set if requested by the parameters
+     */
+    private IWeightedTreeSet<N, Object, WeightedTree<N>> groupTreeSet(Map<String, Object> fetchParameters, IWeightedTreeSet<N, E, T> callGraph) {
         // Look if we need to group the callgraph
+        IWeightedTreeProvider<N, E, T> wtProvider = fWtProvider;
         IWeightedTreeGroupDescriptor groupDescriptor = extractGroupDescriptor(fetchParameters, wtProvider);
         if (groupDescriptor != null) {
             return WeightedTreeGroupBy.groupWeightedTreeBy(groupDescriptor, callGraph, wtProvider);
@@ -356,77 +378,19 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
         return null;
     }
 
-    private void buildWeightedTreeEntries(IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph, List<FlameChartEntryModel.Builder> builder, FlameChartEntryModel.Builder traceEntry) {
+    private void buildWeightedTreeEntries(IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph, List<FlameChartEntryModel.Builder> builder, FlameChartEntryModel.Builder traceEntry, Map<Long, WeightedTreeEntry> cgEntries) {
         IWeightedTreeProvider<N, E, T> wtProvider = fWtProvider;
         Collection<@NonNull ?> elements = callGraph.getElements();
         for (Object element : elements) {
-            buildChildrenEntries(element, wtProvider, callGraph, builder, traceEntry);
+            buildChildrenEntries(element, wtProvider, callGraph, builder, traceEntry, cgEntries);
         }
 
     }
 
-    private ITmfStateSystem elementToStateSystem(IWeightedTreeProvider<N, E, T> wtProvider, IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph, Object element) {
-        // Create an in-memory state system for this element
-        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("org.eclipse.tracecompass.incubator.callgraph.ss", 0L); //$NON-NLS-1$
-        ITmfStateSystemBuilder ssb = StateSystemFactory.newStateSystem(backend);
-
-        // Add the functions
-        List<WeightedTree<N>> rootFunctions = new ArrayList<>(callGraph.getTreesFor(element));
-        rootFunctions.sort(CCT_COMPARATOR2);
-        int quarkFct = ssb.getQuarkAbsoluteAndAdd(FUNCTION_LEVEL);
-        Deque<Long> timestampStack = new ArrayDeque<>();
-        timestampStack.push(0L);
-        for (WeightedTree<N> rootFunction : rootFunctions) {
-            recursivelyAddChildren(wtProvider, ssb, quarkFct, rootFunction, timestampStack);
-        }
-        Long endTime = timestampStack.pop();
-        ssb.closeHistory(endTime);
-
-        return ssb;
-    }
-
-    private void recursivelyAddChildren(IWeightedTreeProvider<N, E, T> wtProvider, ITmfStateSystemBuilder ssb, int quarkFct, WeightedTree<N> callSite, Deque<Long> timestampStack) {
-        Long lastEnd = timestampStack.peek();
-        if (lastEnd == null) {
-            return;
-        }
-        ssb.pushAttribute(lastEnd, new CalleeCustomValue(callSite), quarkFct);
-
-        // Push the children to the state system
-        timestampStack.push(lastEnd);
-        List<WeightedTree<N>> children = new ArrayList<>(callSite.getChildren());
-        children.sort(CCT_COMPARATOR2);
-        for (WeightedTree<N> callsite : children) {
-            recursivelyAddChildren(wtProvider, ssb, quarkFct, callsite, timestampStack);
-        }
-        timestampStack.pop();
-
-        // Add the extra sites
-        List<String> extraDataSets = wtProvider.getExtraDataSets();
-        for (int i = 0; i < extraDataSets.size(); i++) {
-            Collection<WeightedTree<@NonNull N>> extraDataTrees = callSite.getExtraDataTrees(i);
-            if (extraDataTrees.isEmpty()) {
-                continue;
-            }
-            String dataSetName = extraDataSets.get(i);
-            int quarkExtra = ssb.getQuarkAbsoluteAndAdd(dataSetName);
-            long extraStartTime = lastEnd;
-            for (WeightedTree<@NonNull N> extraTree : extraDataTrees) {
-                ssb.modifyAttribute(extraStartTime, new CalleeCustomValue(extraTree), quarkExtra);
-                extraStartTime += extraTree.getWeight();
-            }
-
-        }
-
-        long currentEnd = timestampStack.pop() + callSite.getWeight();
-        timestampStack.push(currentEnd);
-        ssb.popAttribute(currentEnd, quarkFct);
-    }
-
     /**
      * Build the entry list for one thread
      */
-    private void buildChildrenEntries(Object element, IWeightedTreeProvider<N, E, T> wtProvider, IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph, List<FlameChartEntryModel.Builder> builder, FlameChartEntryModel.Builder parent) {
+    private void buildChildrenEntries(Object element, IWeightedTreeProvider<N, E, T> wtProvider, IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph, List<FlameChartEntryModel.Builder> builder, FlameChartEntryModel.Builder parent, Map<Long, WeightedTreeEntry> cgEntries) {
         // Add the entry
         FlameChartEntryModel.Builder entry = new FlameChartEntryModel.Builder(ENTRY_ID.getAndIncrement(),
                 parent.getId(), (element instanceof ITree) ? String.valueOf(((ITree) element).getName()) : String.valueOf(element), 0, FlameChartEntryModel.EntryType.LEVEL, -1);
@@ -435,7 +399,7 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
         // Create the hierarchy of children entries if available
         if (element instanceof ITree) {
             for (ITree child : ((ITree) element).getChildren()) {
-                buildChildrenEntries(child, wtProvider, callGraph, builder, entry);
+                buildChildrenEntries(child, wtProvider, callGraph, builder, entry, cgEntries);
             }
         }
 
@@ -454,39 +418,31 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             return;
         }
 
-        Deque<Long> timestampStack = new ArrayDeque<>();
-        timestampStack.push(0L);
-
-        // Get the state system to represent this callgraph
-        ITmfStateSystem ss = elementToStateSystem(wtProvider, callGraph, element);
-        entry.setEndTime(ss.getCurrentEndTime());
+        // Lay out the trees of this element
+        List<String> extraDataSets = wtProvider.getExtraDataSets();
+        FlameGraphLayout<N> layout = new FlameGraphLayout<>(rootTrees, CCT_COMPARATOR2, extraDataSets.size());
+        long layoutEnd = layout.getEndTime();
+        entry.setEndTime(layoutEnd);
 
         // Add entry items for the main weighted tree levels
-        int quark = ss.optQuarkAbsolute(FUNCTION_LEVEL);
-        if (quark == ITmfStateSystem.INVALID_ATTRIBUTE) {
-            return;
-        }
-        int i = 0;
-        for (Integer subQuark : ss.getSubAttributes(quark, false)) {
+        for (int i = 0; i < layout.getNbDepths(); i++) {
             FlameChartEntryModel.Builder child = new FlameChartEntryModel.Builder(ENTRY_ID.getAndIncrement(), entry.getId(), String.valueOf(i), 0, EntryType.FUNCTION, i);
-            child.setEndTime(ss.getCurrentEndTime());
+            child.setEndTime(layoutEnd);
             builder.add(child);
-            i++;
-            fCgEntries.put(child.getId(), new WeightedTreeEntry(ss, subQuark));
+            cgEntries.put(child.getId(), new WeightedTreeEntry(layout, layout.getDepthRow(i)));
         }
 
         // Add items for the extra entries
-        List<String> extraDataSets = wtProvider.getExtraDataSets();
         for (int set = 0; set < extraDataSets.size(); set++) {
             String dataSetName = extraDataSets.get(set);
-            quark = ss.optQuarkAbsolute(dataSetName);
-            if (quark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            FlameGraphLayout.Row row = layout.getExtraRow(set);
+            if (row == null) {
                 continue;
             }
             FlameChartEntryModel.Builder child = new FlameChartEntryModel.Builder(ENTRY_ID.getAndIncrement(), entry.getId(), dataSetName, 0, EntryType.KERNEL, -1);
-            child.setEndTime(ss.getCurrentEndTime());
+            child.setEndTime(layoutEnd);
             builder.add(child);
-            fCgEntries.put(child.getId(), new WeightedTreeEntry(ss, quark));
+            cgEntries.put(child.getId(), new WeightedTreeEntry(layout, row));
         }
 
         return;
@@ -496,26 +452,36 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
     public @NonNull TmfModelResponse<@NonNull TimeGraphModel> fetchRowModel(@NonNull Map<@NonNull String, @NonNull Object> fetchParameters, @Nullable IProgressMonitor monitor) {
         SubMonitor subMonitor = Objects.requireNonNull(SubMonitor.convert(monitor, "FlameGraphDataProvider#fetchRowModel", 2)); //$NON-NLS-1$
 
-        List<Long> times = DataProviderParameterUtils.extractTimeRequested(fetchParameters);
-        if (times == null) {
+        List<Long> requestedTimes = DataProviderParameterUtils.extractTimeRequested(fetchParameters);
+        if (requestedTimes == null) {
             return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, CommonStatusMessage.INCORRECT_QUERY_PARAMETERS);
         }
+        List<Long> times = new ArrayList<>(requestedTimes);
+        Collections.sort(times);
         List<ITimeGraphRowModel> rowModels = new ArrayList<>();
 
         // Get the selected entries
         Collection<Long> selected = DataProviderParameterUtils.extractSelectedItems(fetchParameters);
+        Map<Long, WeightedTreeEntry> requested = new LinkedHashMap<>();
         if (selected == null) {
-            // No entry selected, assume all
-            selected = fEntries.keySet();
-        }
-        List<WeightedTreeEntry> selectedEntries = new ArrayList<>();
-        Multimap<WeightedTreeEntry, Pair<Integer, Long>> requested = HashMultimap.create();
-
-        for (Long id : selected) {
-            WeightedTreeEntry entry = fCgEntries.get(id);
-            if (entry != null) {
-                selectedEntries.add(entry);
-                requested.put(entry, new Pair<>(entry.fQuark, id));
+            // No entry selected, assume all the entries of the tree for the
+            // parameters of this request
+            try {
+                CachedTree tree = getTree(fetchParameters, subMonitor);
+                if (tree == null) {
+                    return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
+                }
+                requested.putAll(tree.fCgEntries);
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                Activator.getInstance().logError("Error building the flame graph", e.getCause()); //$NON-NLS-1$
+                return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, String.valueOf(e.getMessage()));
+            }
+        } else {
+            for (Long id : selected) {
+                WeightedTreeEntry entry = getCgEntry(id);
+                if (entry != null) {
+                    requested.put(id, entry);
+                }
             }
         }
 
@@ -530,73 +496,47 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
         }
 
-        // For each element and callgraph, get the states
-        try {
-            for (WeightedTreeEntry element : requested.keySet()) {
-                if (subMonitor.isCanceled()) {
-                    return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
-                }
-                Collection<Pair<Integer, Long>> depths = Objects.requireNonNull(requested.get(element));
-                rowModels.addAll(getStatesForElement(times, predicates, subMonitor, element.fSs, depths));
+        // For each entry, get the states from the layout
+        for (Entry<Long, WeightedTreeEntry> entry : requested.entrySet()) {
+            if (subMonitor.isCanceled()) {
+                return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
             }
-        } catch (StateSystemDisposedException e) {
-            // Nothing to do
+            Long key = Objects.requireNonNull(entry.getKey());
+            WeightedTreeEntry cgEntry = entry.getValue();
+            List<ITimeGraphState> eventList = new ArrayList<>();
+            cgEntry.fLayout.getStates(cgEntry.fRow, times, (start, duration, callsite) -> {
+                ITimeGraphState timegraphState = createTimeGraphState(start, duration, callsite);
+                applyFilterAndAddState(eventList, timegraphState, key, predicates, subMonitor);
+            });
+            rowModels.add(new TimeGraphRowModel(key, eventList));
         }
 
         return new TmfModelResponse<>(new TimeGraphModel(rowModels), ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
     }
 
-    private List<ITimeGraphRowModel> getStatesForElement(List<Long> times, Map<Integer, Predicate<Multimap<String, Object>>> predicates, IProgressMonitor monitor,
-            ITmfStateSystem ss, Collection<Pair<Integer, Long>> depths) throws StateSystemDisposedException {
-        List<Integer> quarks = new ArrayList<>();
-        for (Pair<Integer, Long> pair : depths) {
-            quarks.add(pair.getFirst());
-        }
-        TreeMultimap<Integer, ITmfStateInterval> intervals = TreeMultimap.create(Comparator.naturalOrder(),
-                Comparator.comparing(ITmfStateInterval::getStartTime));
-        long ssEndTime = ss.getCurrentEndTime();
-        for (ITmfStateInterval interval : ss.query2D(quarks, times)) {
-            if (monitor.isCanceled()) {
-                return Collections.emptyList();
-            }
-            // Ignore the null intervals of value 1 at the end of the state
-            // system
-            if (interval.getStartTime() == ssEndTime &&
-                    interval.getStartTime() == interval.getEndTime() &&
-                    interval.getValue() == null) {
-                continue;
+    /**
+     * Get the data of an entry in the last tree or any of the cached trees
+     */
+    private @Nullable WeightedTreeEntry getCgEntry(Long id) {
+        CachedTree lastTree = fLastTree;
+        if (lastTree != null) {
+            WeightedTreeEntry entry = lastTree.fCgEntries.get(id);
+            if (entry != null) {
+                return entry;
             }
-            intervals.put(interval.getAttribute(), interval);
         }
-
-        List<ITimeGraphRowModel> rows = new ArrayList<>();
-        for (Pair<Integer, Long> pair : depths) {
-            int quark = pair.getFirst();
-            NavigableSet<ITmfStateInterval> states = intervals.get(quark);
-
-            if (monitor.isCanceled()) {
-                return Collections.emptyList();
+        for (CachedTree cached : fCachedTrees.asMap().values()) {
+            WeightedTreeEntry entry = cached.fCgEntries.get(id);
+            if (entry != null) {
+                return entry;
             }
-            List<ITimeGraphState> eventList = new ArrayList<>();
-            Long key = Objects.requireNonNull(pair.getSecond());
-            states.forEach(i -> {
-                ITimeGraphState timegraphState = createTimeGraphState(i, ssEndTime);
-                applyFilterAndAddState(eventList, timegraphState, key, predicates, monitor);
-            });
-            rows.add(new TimeGraphRowModel(key, eventList));
         }
-        return rows;
-
+        return null;
     }
 
-    private ITimeGraphState createTimeGraphState(ITmfStateInterval interval, long ssEndTime) {
+    private ITimeGraphState createTimeGraphState(long startTime, long duration, @Nullable WeightedTree<N> callsite) {
         IWeightedTreeProvider<N, E, T> wtProvider = fWtProvider;
-        long startTime = interval.getStartTime();
-        long duration = interval.getEndTime() - startTime + (ssEndTime == interval.getEndTime() ? 0 : 1);
-        Object valueObject = interval.getValue();
-        if (valueObject instanceof CalleeCustomValue) {
-
-            WeightedTree<N> callsite = ((CalleeCustomValue) valueObject).fCallSite;
+        if (callsite != null) {
             String displayString = wtProvider.toDisplayString((T) callsite);
             return new TimeGraphState(startTime, duration, displayString, fWtProvider.getPalette().getStyleFor(callsite));
         }
@@ -620,7 +560,7 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
         }
         Long time = times.get(0);
         Long item = items.get(0);
-        WeightedTreeEntry callGraphEntry = fCgEntries.get(item);
+        WeightedTreeEntry callGraphEntry = getCgEntry(item);
         if (callGraphEntry == null) {
             return new TmfModelResponse<>(Collections.emptyMap(), ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
         }
@@ -714,17 +654,7 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
 
     /** Find the callsite at the time and depth requested */
     private @Nullable WeightedTree<@NonNull N> findCallSite(WeightedTreeEntry cgEntry, Long time) {
-        try {
-            ITmfStateInterval interval = cgEntry.fSs.querySingleState(time, cgEntry.fQuark);
-
-            Object valueObject = interval.getValue();
-            if (valueObject instanceof CalleeCustomValue) {
-                return ((CalleeCustomValue) valueObject).fCallSite;
-            }
-        } catch (StateSystemDisposedException e) {
-            // Nothing to do
-        }
-        return null;
+        return cgEntry.fLayout.getTreeAt(cgEntry.fRow, time);
     }
 
     @Override
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.flamegraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+
+/**
+ * The layout of the weighted trees of an element in a flame graph. Each tree
+ * starts where the previous sibling ends and its children start at the same
+ * time as the tree, so the states of a depth are computed directly from the
+ * trees, in compact arrays of start time, length and tree index sorted by start
+ * time. The states at a given time are found by binary search.
+ *
+ * The time between the states of a row is returned as empty states, to
+ * represent the rows as the time graph expects them.
+ *
+ * @param <N>
+ *            The type of objects represented by each node in the tree
+ */
+final class FlameGraphLayout<@NonNull N> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Callback for the states of a row
+     *
+     * @param <T>
+     *            The type of objects represented by each node in the tree
+     */
+    @FunctionalInterface
+    interface IStateConsumer<@NonNull T> {
+        /**
+         * Accept a state
+         *
+         * @param start
+         *            The start time of the state
+         * @param duration
+         *            The duration of the state
+         * @param tree
+         *            The tree of this state, or <code>null</code> for an empty
+         *            state
+         */
+        void accept(long start, long duration, @Nullable WeightedTree<T> tree);
+    }
+
+    /**
+     * The states of one row of the flame graph, sorted by start time
+     */
+    static final class Row {
+        private int fSize = 0;
+        private long[] fStarts = new long[INITIAL_CAPACITY];
+        private long[] fLengths = new long[INITIAL_CAPACITY];
+        private int[] fTrees = new int[INITIAL_CAPACITY];
+
+        private void add(long start, long length, int tree) {
+            if (fSize == fStarts.length) {
+                int capacity = fSize * 2;
+                fStarts = Arrays.copyOf(fStarts, capacity);
+                fLengths = Arrays.copyOf(fLengths, capacity);
+                fTrees = Arrays.copyOf(fTrees, capacity);
+            }
+            fStarts[fSize] = start;
+            fLengths[fSize] = length;
+            fTrees[fSize] = tree;
+            fSize++;
+        }
+
+        private void sort() {
+            Integer[] order = new Integer[fSize];
+            for (int i = 0; i < fSize; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> fStarts[i]));
+            long[] starts = new long[fSize];
+            long[] lengths = new long[fSize];
+            int[] trees = new int[fSize];
+            for (int i = 0; i < fSize; i++) {
+                starts[i] = fStarts[order[i]];
+                lengths[i] = fLengths[order[i]];
+                trees[i] = fTrees[order[i]];
+            }
+            fStarts = starts;
+            fLengths = lengths;
+            fTrees = trees;
+        }
+
+        /**
+         * Get the index of the last state starting at or before a time
+         */
+        private int indexOf(long time) {
+            int index = Arrays.binarySearch(fStarts, 0, fSize, time);
+            if (index < 0) {
+                return -index - 2;
+            }
+            // Go to the last state starting at this time
+            while (index + 1 < fSize && fStarts[index + 1] == time) {
+                index++;
+            }
+            return index;
+        }
+
+        private long getEnd(int index) {
+            return fStarts[index] + fLengths[index];
+        }
+    }
+
+    /** A tree to lay out, with its depth and start time */
+    private static final class Frame<@NonNull T> {
+        private final WeightedTree<T> fTree;
+        private final int fDepth;
+        private final long fStart;
+
+        public Frame(WeightedTree<T> tree, int depth, long start) {
+            fTree = tree;
+            fDepth = depth;
+            fStart = start;
+        }
+    }
+
+    private final List<WeightedTree<N>> fTrees = new ArrayList<>();
+    private final List<Row> fDepthRows = new ArrayList<>();
+    private final @Nullable Row[] fExtraRows;
+    private final long fEndTime;
+
+    /**
+     * Constructor, lays out the trees
+     *
+     * @param rootTrees
+     *            The root trees of the element
+     * @param comparator
+     *            The comparator to order the siblings
+     * @param extraDataSets
+     *            The number of extra data sets of the trees, see
+     *            {@link WeightedTree#getExtraDataTrees(int)}
+     */
+    public FlameGraphLayout(Collection<WeightedTree<N>> rootTrees, Comparator<WeightedTree<N>> comparator, int extraDataSets) {
+        fExtraRows = new @Nullable Row[extraDataSets];
+        Deque<Frame<N>> frames = new ArrayDeque<>();
+        fEndTime = pushChildren(frames, rootTrees, comparator, 0, 0);
+        while (!frames.isEmpty()) {
+            Frame<N> frame = frames.pop();
+            WeightedTree<N> tree = frame.fTree;
+            int depth = frame.fDepth;
+            if (depth == fDepthRows.size()) {
+                fDepthRows.add(new Row());
+            }
+            int index = fTrees.size();
+            fTrees.add(tree);
+            if (tree.getWeight() > 0) {
+                fDepthRows.get(depth).add(frame.fStart, tree.getWeight(), index);
+            }
+            addExtraTrees(tree, frame.fStart);
+            pushChildren(frames, tree.getChildren(), comparator, depth + 1, frame.fStart);
+        }
+        // Extra trees of a parent may start before the ones of its children
+        for (Row row : fExtraRows) {
+            if (row != null) {
+                row.sort();
+            }
+        }
+    }
+
+    /**
+     * Push the trees in reverse order, so that they are laid out in order, and
+     * the states of each depth are added by start time.
+     *
+     * @return The end time of the last tree
+     */
+    private static <@NonNull T> long pushChildren(Deque<Frame<T>> frames, Collection<WeightedTree<T>> trees, Comparator<WeightedTree<T>> comparator, int depth, long start) {
+        List<WeightedTree<T>> sorted = new ArrayList<>(trees);
+        sorted.sort(comparator);
+        long end = start;
+        List<Frame<T>> children = new ArrayList<>(sorted.size());
+        for (WeightedTree<T> tree : sorted) {
+            children.add(new Frame<>(tree, depth, end));
+            end += tree.getWeight();
+        }
+        for (int i = children.size() - 1; i >= 0; i--) {
+            frames.push(children.get(i));
+        }
+        return end;
+    }
+
+    private void addExtraTrees(WeightedTree<N> tree, long start) {
+        for (int set = 0; set < fExtraRows.length; set++) {
+            Collection<WeightedTree<N>> extraTrees = tree.getExtraDataTrees(set);
+            if (extraTrees.isEmpty()) {
+                continue;
+            }
+            Row row = fExtraRows[set];
+            if (row == null) {
+                row = new Row();
+                fExtraRows[set] = row;
+            }
+            long extraStart = start;
+            for (WeightedTree<N> extraTree : extraTrees) {
+                int index = fTrees.size();
+                fTrees.add(extraTree);
+                if (extraTree.getWeight() > 0) {
+                    row.add(extraStart, extraTree.getWeight(), index);
+                }
+                extraStart += extraTree.getWeight();
+            }
+        }
+    }
+
+    /**
+     * Get the end time of the flame graph of this element, ie the sum of the
+     * weights of the root trees
+     *
+     * @return The end time
+     */
+    public long getEndTime() {
+        return fEndTime;
+    }
+
+    /**
+     * Get the number of trees laid out, including the extra data trees
+     *
+     * @return The number of trees
+     */
+    public int size() {
+        return fTrees.size();
+    }
+
+    /**
+     * Get the number of depths of the trees
+     *
+     * @return The number of depth rows
+     */
+    public int getNbDepths() {
+        return fDepthRows.size();
+    }
+
+    /**
+     * Get the row of a depth
+     *
+     * @param depth
+     *            The depth, starting at 0 for the root trees
+     * @return The row
+     */
+    public Row getDepthRow(int depth) {
+        return fDepthRows.get(depth);
+    }
+
+    /**
+     * Get the row of an extra data set
+     *
+     * @param set
+     *            The index of the extra data set
+     * @return The row, or <code>null</code> if no tree has extra data for
+     *         this set
+     */
+    public @Nullable Row getExtraRow(int set) {
+        return fExtraRows[set];
+    }
+
+    /**
+     * Get the tree of a row at a time
+     *
+     * @param row
+     *            The row
+     * @param time
+     *            The time
+     * @return The tree at this time, or <code>null</code> if there is no tree
+     *         at this time
+     */
+    public @Nullable WeightedTree<N> getTreeAt(Row row, long time) {
+        if (time < 0 || time > fEndTime || fEndTime <= 0) {
+            return null;
+        }
+        // The last state includes the end time
+        long queryTime = Math.min(time, fEndTime - 1);
+        int index = row.indexOf(queryTime);
+        if (index < 0 || queryTime >= row.getEnd(index)) {
+            return null;
+        }
+        return fTrees.get(row.fTrees[index]);
+    }
+
+    /**
+     * Get the states of a row that intersect the requested times, including
+     * the empty states between trees. Each state is returned only once.
+     *
+     * @param row
+     *            The row
+     * @param times
+     *            The requested times, sorted
+     * @param consumer
+     *            The consumer of the states, called in time order
+     */
+    public void getStates(Row row, List<Long> times, IStateConsumer<N> consumer) {
+        if (fEndTime <= 0) {
+            return;
+        }
+        // The last state returned: a state index or the empty state after it
+        int lastIndex = Integer.MIN_VALUE;
+        boolean lastEmpty = false;
+        for (long time : times) {
+            if (time < 0 || time > fEndTime) {
+                continue;
+            }
+            // The last state includes the end time
+            long queryTime = Math.min(time, fEndTime - 1);
+            int index = row.indexOf(queryTime);
+            boolean empty = index < 0 || queryTime >= row.getEnd(index);
+            if (index == lastIndex && empty == lastEmpty) {
+                continue;
+            }
+            lastIndex = index;
+            lastEmpty = empty;
+            if (!empty) {
+                consumer.accept(row.fStarts[index], row.fLengths[index], fTrees.get(row.fTrees[index]));
+                continue;
+            }
+            long emptyStart = index < 0 ? 0 : row.getEnd(index);
+            long emptyEnd = index + 1 < row.fSize ? row.fStarts[index + 1] : fEndTime;
+            if (emptyEnd > emptyStart) {
+                consumer.accept(emptyStart, emptyEnd - emptyStart, null);
+            }
+        }
+    }
+
+}
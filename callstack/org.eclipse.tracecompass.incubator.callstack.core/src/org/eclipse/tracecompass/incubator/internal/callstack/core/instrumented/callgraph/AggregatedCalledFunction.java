@@ -86,6 +86,30 @@ public class AggregatedCalledFunction extends AggregatedCallSite {
         mergeProcessStatuses(toCopy);
     }
 
+    /**
+     * Constructor for a function read from a persisted call graph. The
+     * statistics are empty and should be restored by the caller.
+     *
+     * @param symbol
+     *            The symbol of the function
+     * @param duration
+     *            The total duration of the calls
+     * @param selfTime
+     *            The total self time of the calls
+     * @param cpuTime
+     *            The total CPU time of the calls, or
+     *            {@link IHostModel#TIME_UNKNOWN}
+     * @param processId
+     *            The process ID of the traced application
+     */
+    AggregatedCalledFunction(ICallStackSymbol symbol, long duration, long selfTime, long cpuTime, int processId) {
+        this(symbol);
+        fDuration = duration;
+        fSelfTime = selfTime;
+        fCpuTime = cpuTime;
+        fProcessId = processId;
+    }
+
     @Override
     public long getWeight() {
         return fDuration;
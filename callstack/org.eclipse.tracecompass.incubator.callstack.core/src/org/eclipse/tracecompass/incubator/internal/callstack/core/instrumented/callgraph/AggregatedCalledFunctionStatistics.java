@@ -11,10 +11,14 @@
 
 package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
 
+import java.util.List;
+
 import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
 import org.eclipse.tracecompass.analysis.timing.core.statistics.Statistics;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Class to calculate statistics for an aggregated function.
  *
@@ -25,11 +29,11 @@ public class AggregatedCalledFunctionStatistics {
 
     // Duration statistics will be kept for all calls of the method, so we make
     // them on the called function themselves
-    private final IStatistics<ICalledFunction> fDurations;
+    private final CallStatistics<ICalledFunction> fDurations;
     // Self time statistics are on aggregated called function because self times
     // are known only at the end, once the aggregation is over
-    private final IStatistics<ICalledFunction> fSelfTimes;
-    private final IStatistics<ICalledFunction> fCpuTimes;
+    private final CallStatistics<ICalledFunction> fSelfTimes;
+    private final CallStatistics<ICalledFunction> fCpuTimes;
     // FIXME: Should this class manage the number of calls, or the callsite?
     // Common info with sampling, so maybe callsite
     private final IStatistics<ICalledFunction> fNbCalls;
@@ -38,9 +42,9 @@ public class AggregatedCalledFunctionStatistics {
      * Constructor
      */
     public AggregatedCalledFunctionStatistics() {
-        fDurations = new Statistics<>(f -> f.getLength());
-        fSelfTimes = new Statistics<>(f -> f.getSelfTime());
-        fCpuTimes = new Statistics<>(f -> f.getCpuTime());
+        fDurations = new CallStatistics<>(f -> f.getLength());
+        fSelfTimes = new CallStatistics<>(f -> f.getSelfTime());
+        fCpuTimes = new CallStatistics<>(f -> f.getCpuTime());
         fNbCalls = new Statistics<>(f -> f.getCpuTime());
     }
 
@@ -126,6 +130,16 @@ public class AggregatedCalledFunctionStatistics {
         return fCpuTimes;
     }
 
+    /**
+     * Get the statistics that are persisted with the call graph: the
+     * durations, self times and CPU times, in this order
+     *
+     * @return The persisted statistics
+     */
+    List<CallStatistics<ICalledFunction>> getPersistedStatistics() {
+        return ImmutableList.of(fDurations, fSelfTimes, fCpuTimes);
+    }
+
     @Override
     public String toString() {
         return "Aggregated function statistics: Durations: " + fDurations + ", Self times " + fSelfTimes; //$NON-NLS-1$//$NON-NLS-2$
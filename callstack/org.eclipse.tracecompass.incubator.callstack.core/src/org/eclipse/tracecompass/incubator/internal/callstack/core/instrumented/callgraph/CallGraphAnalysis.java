@@ -11,11 +11,19 @@
 
 package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -25,7 +33,6 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
-import org.eclipse.tracecompass.incubator.analysis.core.concepts.ProcessStatusInterval;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IDataPalette;
@@ -34,12 +41,11 @@ import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
 import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
 import org.eclipse.tracecompass.incubator.callstack.core.callgraph.ICallGraphProvider;
 import org.eclipse.tracecompass.incubator.callstack.core.flamechart.CallStack;
-import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.IFlameChartProvider;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesystem.CallStackSeries;
-import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.Activator;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.InstrumentedCallStackElement;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.IntervalCallGraphBuilder.RootRange;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.palette.FlameWithKernelPalette;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
@@ -47,13 +53,16 @@ import org.eclipse.tracecompass.tmf.core.symbols.ISymbolProvider;
 import org.eclipse.tracecompass.tmf.core.symbols.SymbolProviderManager;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Call stack analysis used to create a segment for each call function from an
@@ -94,6 +103,20 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
             new MetricType(SELF_TIME_TITLE, DataType.NANOSECONDS, null, true),
             new MetricType(CPU_TIME_TITLE, DataType.NANOSECONDS, null, true),
             new MetricType(NB_CALLS_TITLE, DataType.NUMBER, null, false));
+    private static final int DEFAULT_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /** Time after which an idle thread of the executor stops, in seconds */
+    private static final long EXECUTOR_KEEP_ALIVE = 30;
+    /**
+     * Default number of time buckets of the trace for which partial call
+     * graphs are kept to build the range call graphs
+     */
+    private static final int DEFAULT_NB_BUCKETS = 64;
+    /**
+     * Maximum number of aggregated call sites in the cached bucket call graphs
+     */
+    private static final long BUCKET_CACHE_WEIGHT = 1000000;
+    private static final String CALLGRAPH_FILE_EXTENSION = ".callgraph"; //$NON-NLS-1$
+    private static final String HISTORY_FILE_EXTENSION = ".ht"; //$NON-NLS-1$
 
     // ------------------------------------------------------------------------
     // Attributes
@@ -103,7 +126,11 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
     private final CallGraph fCallGraph = new CallGraph();
 
     private @Nullable Collection<ISymbolProvider> fSymbolProviders = null;
-    private boolean fHasKernelStatuses = false;
+    private volatile boolean fHasKernelStatuses = false;
+    private int fThreadCount = DEFAULT_THREAD_COUNT;
+    // Threads building the call graphs of the leaf elements, shared by all
+    // the call graphs built by this analysis and created when first needed
+    private @Nullable ThreadPoolExecutor fExecutor = null;
 
     // Keep a very small cache of selection callgraphs, to avoid having to
     // compute again
@@ -112,9 +139,68 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
             .build(new CacheLoader<TmfTimeRange, CallGraph>() {
                 @Override
                 public CallGraph load(TmfTimeRange range) {
-                    CallGraph cg = new CallGraph();
-                    executeForRange(cg, range, new NullProgressMonitor());
-                    return cg;
+                    return buildRangeCallGraph(range);
+                }
+            }));
+
+    /**
+     * The time buckets of the trace, of the same duration, the last one may end
+     * before the end of the trace
+     */
+    private static final class BucketLayout {
+        private final long fStart;
+        private final long fWidth;
+        private final int fNbBuckets;
+        private final long fTraceEnd;
+
+        public BucketLayout(long start, long width, int nbBuckets, long traceEnd) {
+            fStart = start;
+            fWidth = width;
+            fNbBuckets = nbBuckets;
+            fTraceEnd = traceEnd;
+        }
+
+        public long getStart(int bucket) {
+            return fStart + bucket * fWidth;
+        }
+
+        /** Get the first bucket starting at or after a time */
+        public int getFirstBucketFrom(long time) {
+            if (time <= fStart) {
+                return 0;
+            }
+            return (int) Math.min(fNbBuckets, (time - fStart + fWidth - 1) / fWidth);
+        }
+    }
+
+    /**
+     * The call graph of the root functions starting in a bucket, with their
+     * whole duration, and the end time of the last of them
+     */
+    private static final class Bucket {
+        private final CallGraph fCallGraph;
+        private final long fMaxEnd;
+        private final int fWeight;
+
+        public Bucket(CallGraph callGraph, long maxEnd) {
+            fCallGraph = callGraph;
+            fMaxEnd = maxEnd;
+            fWeight = countCallSites(callGraph);
+        }
+    }
+
+    // Call graphs of the time buckets of the trace, by bucket range, so that
+    // range callgraphs merge the buckets they cover and walk the callstack
+    // only for the functions that start outside of them or end after the range
+    private int fNbBuckets = DEFAULT_NB_BUCKETS;
+    private @Nullable BucketLayout fBuckets = null;
+    private final LoadingCache<TmfTimeRange, Bucket> fBucketCallgraphs = Objects.requireNonNull(CacheBuilder.newBuilder()
+            .maximumWeight(BUCKET_CACHE_WEIGHT)
+            .weigher((TmfTimeRange range, Bucket bucket) -> bucket.fWeight)
+            .build(new CacheLoader<TmfTimeRange, Bucket>() {
+                @Override
+                public Bucket load(TmfTimeRange range) {
+                    return buildBucket(range.getStartTime().toNanos(), range.getEndTime().toNanos());
                 }
             }));
 
@@ -130,6 +216,54 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
         setName(NLS.bind(Messages.CallGraphAnalysis_NamePrefix, csProvider.getName()));
     }
 
+    /**
+     * Set the maximum number of threads used to build the call graph. The call
+     * graph of each leaf element is built independently, then they are merged.
+     *
+     * @param threadCount
+     *            The maximum number of threads, 1 to build the call graph in
+     *            the calling thread
+     */
+    @VisibleForTesting
+    public synchronized void setThreadCount(int threadCount) {
+        fThreadCount = Math.max(1, threadCount);
+        ThreadPoolExecutor executor = fExecutor;
+        if (executor != null) {
+            // Grow the maximum before the core size, which cannot exceed it
+            if (fThreadCount > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(fThreadCount);
+                executor.setCorePoolSize(fThreadCount);
+            } else {
+                executor.setCorePoolSize(fThreadCount);
+                executor.setMaximumPoolSize(fThreadCount);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        ThreadPoolExecutor executor = fExecutor;
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(fThreadCount, fThreadCount, EXECUTOR_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setNameFormat("CallGraph-%d").setDaemon(true).build()); //$NON-NLS-1$
+            // Do not keep idle threads once the call graphs are built
+            executor.allowCoreThreadTimeOut(true);
+            fExecutor = executor;
+        }
+        return executor;
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        synchronized (this) {
+            ThreadPoolExecutor executor = fExecutor;
+            if (executor != null) {
+                executor.shutdownNow();
+                fExecutor = null;
+            }
+        }
+    }
+
     @Override
     public @NonNull String getHelpText() {
         String msg = Messages.CallGraphAnalysis_Description;
@@ -158,10 +292,90 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
 
     @Override
     protected boolean executeAnalysis(@Nullable IProgressMonitor monitor) {
-        return executeForRange(fCallGraph, TmfTimeRange.ETERNITY, monitor);
+        if (readCallGraph(monitor)) {
+            getBuckets();
+            return true;
+        }
+        if (!executeForRange(fCallGraph, TmfTimeRange.ETERNITY, monitor)) {
+            return false;
+        }
+        writeCallGraph();
+        // The trace's time range is known, split it in buckets
+        getBuckets();
+        return true;
+    }
+
+    /**
+     * Read the call graph from the supplementary file, if it was computed from
+     * the current state system of the callstack
+     */
+    private boolean readCallGraph(@Nullable IProgressMonitor monitor) {
+        File file = getSupplementaryFile(getId() + CALLGRAPH_FILE_EXTENSION);
+        File ssFile = getSupplementaryFile(fCsProvider.getId() + HISTORY_FILE_EXTENSION);
+        if (monitor == null || file == null || ssFile == null || !file.exists()) {
+            return false;
+        }
+        fCsProvider.schedule();
+        if (!fCsProvider.waitForCompletion(monitor)) {
+            return false;
+        }
+        CallStackSeries series = fCsProvider.getCallStackSeries();
+        if (series == null || !isCallGraphPersistable()) {
+            return false;
+        }
+        CallGraph callgraph = CallGraphFile.read(file, ssFile, series.getRootElements());
+        if (callgraph == null) {
+            return false;
+        }
+        List<ICallStackElement> leaves = new ArrayList<>();
+        series.getRootElements().forEach(element -> getLeafElements(element, leaves));
+        for (ICallStackElement leaf : leaves) {
+            mergeLeafCallGraph(fCallGraph, leaf, callgraph);
+        }
+        return true;
+    }
+
+    /**
+     * Save the call graph in a supplementary file. This is possible only if
+     * the state system of the callstack is saved in a file, as the call graph
+     * is valid only as long as that file does not change, and if the call graph
+     * does not use data from the host model.
+     */
+    private void writeCallGraph() {
+        File file = getSupplementaryFile(getId() + CALLGRAPH_FILE_EXTENSION);
+        File ssFile = getSupplementaryFile(fCsProvider.getId() + HISTORY_FILE_EXTENSION);
+        CallStackSeries series = fCsProvider.getCallStackSeries();
+        if (file == null || ssFile == null || !ssFile.exists() || series == null || !isCallGraphPersistable()) {
+            return;
+        }
+        List<ICallStackElement> leaves = new ArrayList<>();
+        series.getRootElements().forEach(element -> getLeafElements(element, leaves));
+        CallGraphFile.write(file, ssFile, fCallGraph, leaves);
+    }
+
+    /**
+     * The CPU times, kernel statuses and sampling data come from other traces
+     * and analyses that may not be there the next time, the call graph can be
+     * reused only if it depends on the callstack alone
+     */
+    private boolean isCallGraphPersistable() {
+        IHostModel model = ModelManager.getModelFor(fCsProvider.getHostId());
+        return !model.isCpuTimeAvailable() && !model.isThreadStatusAvailable() && !model.isSamplingDataAvailable();
+    }
+
+    private @Nullable File getSupplementaryFile(String name) {
+        ITmfTrace trace = getTrace();
+        if (trace == null) {
+            return null;
+        }
+        return new File(TmfTraceManager.getSupplementaryFileDir(trace), name);
     }
 
     private boolean executeForRange(CallGraph callgraph, TmfTimeRange range, @Nullable IProgressMonitor monitor) {
+        return executeForRange(callgraph, range, new RootRange(Long.MIN_VALUE, Long.MAX_VALUE), monitor);
+    }
+
+    private boolean executeForRange(CallGraph callgraph, TmfTimeRange range, RootRange rootRange, @Nullable IProgressMonitor monitor) {
         ITmfTrace trace = getTrace();
         if (monitor == null || trace == null) {
             return false;
@@ -186,7 +400,7 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
                 long time1 = range.getEndTime().toNanos();
                 long start = Math.min(time0, time1);
                 long end = Math.max(time0, time1);
-                if (!iterateOverCallstackSerie(callstack, model, callgraph, start, end, monitor)) {
+                if (!iterateOverCallstackSerie(callstack, model, callgraph, start, end, rootRange, monitor)) {
                     return false;
                 }
             }
@@ -197,7 +411,8 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
     }
 
     /**
-     * Iterate over a callstack series. It will do a depth-first search to create
+     * Iterate over a callstack series. The call graph of each leaf element is
+     * built depth-first, in parallel if there are many leaves, then merged in
      * the callgraph
      *
      * @param callstackSerie
@@ -216,81 +431,260 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
      */
     @VisibleForTesting
     protected boolean iterateOverCallstackSerie(CallStackSeries callstackSerie, IHostModel model, CallGraph callgraph, long start, long end, IProgressMonitor monitor) {
+        return iterateOverCallstackSerie(callstackSerie, model, callgraph, start, end, new RootRange(Long.MIN_VALUE, Long.MAX_VALUE), monitor);
+    }
+
+    private boolean iterateOverCallstackSerie(CallStackSeries callstackSerie, IHostModel model, CallGraph callgraph, long start, long end, RootRange rootRange, IProgressMonitor monitor) {
         // The root elements are the same as the one from the callstack series
         Collection<ICallStackElement> rootElements = callstackSerie.getRootElements();
+        List<ICallStackElement> leaves = new ArrayList<>();
         for (ICallStackElement element : rootElements) {
             if (monitor.isCanceled()) {
                 return false;
             }
-            iterateOverElement(element, model, callgraph, start, end, monitor);
+            getLeafElements(element, leaves);
         }
-        return true;
+        if (fThreadCount <= 1 || leaves.size() <= 1) {
+            for (ICallStackElement leaf : leaves) {
+                if (monitor.isCanceled()) {
+                    return false;
+                }
+                mergeLeafCallGraph(callgraph, leaf, iterateOverLeafElement(leaf, model, start, end, rootRange, monitor));
+            }
+            return !monitor.isCanceled();
+        }
+
+        // The leaves are independent, build their call graphs in parallel
+        List<Future<CallGraph>> futures = new ArrayList<>();
+        try {
+            ExecutorService executor = getExecutor();
+            for (ICallStackElement leaf : leaves) {
+                futures.add(executor.submit(() -> iterateOverLeafElement(leaf, model, start, end, rootRange, monitor)));
+            }
+            // Merge in the order of the leaves, so the result does not depend
+            // on the scheduling of the threads
+            for (int i = 0; i < leaves.size(); i++) {
+                if (monitor.isCanceled()) {
+                    return false;
+                }
+                mergeLeafCallGraph(callgraph, leaves.get(i), futures.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RejectedExecutionException e) {
+            // The analysis was disposed
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            Activator.getInstance().logError("Call Graph Analysis: Error building the call graph", cause); //$NON-NLS-1$
+            return false;
+        } finally {
+            // Do not let the remaining leaves of a cancelled build use the threads
+            futures.forEach(future -> future.cancel(false));
+        }
+        return !monitor.isCanceled();
     }
 
-    private void iterateOverElement(ICallStackElement element, IHostModel model, CallGraph callgraph, long start, long end, IProgressMonitor monitor) {
+    private static void getLeafElements(ICallStackElement element, List<ICallStackElement> leaves) {
         // Iterator over the children of the element until we reach the leaves
         if (element.isLeaf()) {
-            iterateOverLeafElement(element, model, callgraph, start, end, monitor);
+            leaves.add(element);
             return;
         }
         for (ICallStackElement child : element.getChildrenElements()) {
-            iterateOverElement(child, model, callgraph, start, end, monitor);
+            getLeafElements(child, leaves);
+        }
+    }
+
+    private static void mergeLeafCallGraph(CallGraph callgraph, ICallStackElement element, CallGraph leafCallGraph) {
+        for (AggregatedCallSite callsite : leafCallGraph.getCallingContextTree(element)) {
+            callgraph.addAggregatedCallSite(element, callsite);
         }
     }
 
-    private void iterateOverLeafElement(ICallStackElement element, IHostModel model, CallGraph callgraph, long start, long end, IProgressMonitor monitor) {
+    /**
+     * Build the call graph of a single leaf element. It does not modify any
+     * shared state other than the kernel statuses flag, so it can be called
+     * concurrently for different leaves.
+     */
+    private CallGraph iterateOverLeafElement(ICallStackElement element, IHostModel model, long start, long end, RootRange rootRange, IProgressMonitor monitor) {
         if (!(element instanceof InstrumentedCallStackElement)) {
             throw new IllegalStateException("Call Graph Analysis: The element does not have the right type"); //$NON-NLS-1$
         }
+        CallGraph callgraph = new CallGraph();
         InstrumentedCallStackElement insElement = (InstrumentedCallStackElement) element;
         CallStack callStack = insElement.getCallStack();
 
         // If there is no children for this callstack, just return
         if (callStack.getMaxDepth() == 0) {
-            return;
+            return callgraph;
+        }
+        if (callStack.hasKernelStatuses()) {
+            fHasKernelStatuses = true;
+        }
+        // Read all the intervals of the callstack at once and rebuild the
+        // calls from them
+        new IntervalCallGraphBuilder(this, element, callStack, model, start, end, rootRange).build(callgraph, monitor);
+        return callgraph;
+    }
+
+    /**
+     * Build the callgraph for a time range. The call graph of a bucket holds
+     * the root functions that start in it, with their whole duration, so the
+     * buckets starting in the range whose functions all end in the range are
+     * merged. The root functions starting before the first of these buckets
+     * or after the last one are aggregated from the callstack, clipped to the
+     * range. The result is the same as aggregating the whole range from the
+     * callstack.
+     */
+    private CallGraph buildRangeCallGraph(TmfTimeRange range) {
+        CallGraph cg = new CallGraph();
+        long time0 = range.getStartTime().toNanos();
+        long time1 = range.getEndTime().toNanos();
+        long start = Math.min(time0, time1);
+        long end = Math.max(time0, time1);
+        BucketLayout buckets = getBuckets();
+        if (buckets == null) {
+            executeForRange(cg, range, new NullProgressMonitor());
+            return cg;
         }
-        fHasKernelStatuses |= callStack.hasKernelStatuses();
-        // Start with the first function
-        AbstractCalledFunction nextFunction = (AbstractCalledFunction) callStack.getNextFunction(callStack.getStartTime(), 1, null, model, start, end);
-        while (nextFunction != null) {
-            AggregatedCalledFunction aggregatedChild = createCallSite(CallStackSymbolFactory.createSymbol(nextFunction.getSymbol(), element, nextFunction.getStart()));
-            iterateOverCallstack(element, callStack, nextFunction, 2, aggregatedChild, model, start, end, monitor);
-            aggregatedChild.addFunctionCall(nextFunction);
-            // Add the kernel statuses if available
-            Iterable<ProcessStatusInterval> kernelStatuses = callStack.getKernelStatuses(nextFunction, Collections.emptyList());
-            for (ProcessStatusInterval status : kernelStatuses) {
-                aggregatedChild.addKernelStatus(status);
+        // Find the buckets whose functions are fully covered by the range
+        int first = buckets.getFirstBucketFrom(start);
+        long firstStart = buckets.getStart(first);
+        long coveredEnd = firstStart;
+        List<Bucket> covered = new ArrayList<>();
+        for (int bucket = first; bucket < buckets.fNbBuckets && buckets.getStart(bucket + 1) <= end; bucket++) {
+            Bucket partial = fBucketCallgraphs.getUnchecked(getRange(buckets.getStart(bucket), buckets.getStart(bucket + 1)));
+            if (partial.fMaxEnd > end) {
+                // A function of this bucket ends after the range
+                break;
             }
-            callgraph.addAggregatedCallSite(element, aggregatedChild);
-            nextFunction = (AbstractCalledFunction) callStack.getNextFunction(nextFunction.getEnd(), 1, null, model, start, end);
+            covered.add(partial);
+            coveredEnd = buckets.getStart(bucket + 1);
+        }
+        if (covered.isEmpty()) {
+            executeForRange(cg, range, new NullProgressMonitor());
+            return cg;
+        }
+        executeForRange(cg, getRange(start, end), new RootRange(Long.MIN_VALUE, firstStart), new NullProgressMonitor());
+        for (Bucket partial : covered) {
+            mergeCallGraph(cg, partial.fCallGraph);
         }
+        executeForRange(cg, getRange(coveredEnd, end), new RootRange(coveredEnd, Long.MAX_VALUE), new NullProgressMonitor());
+        return cg;
     }
 
-    private void iterateOverCallstack(ICallStackElement element, CallStack callstack, ICalledFunction function, int nextLevel, AggregatedCalledFunction aggregatedCall, IHostModel model, long start, long end, IProgressMonitor monitor) {
-        if (nextLevel > callstack.getMaxDepth()) {
-            return;
+    /**
+     * Build the call graph of the root functions starting in a bucket
+     *
+     * @param start
+     *            The start of the bucket
+     * @param end
+     *            The end of the bucket, exclusive
+     */
+    private Bucket buildBucket(long start, long end) {
+        CallGraph cg = new CallGraph();
+        RootRange rootRange = new RootRange(start, end);
+        // The functions are not clipped to the bucket
+        executeForRange(cg, getRange(start, Long.MAX_VALUE), rootRange, new NullProgressMonitor());
+        return new Bucket(cg, rootRange.getMaxEnd());
+    }
+
+    /**
+     * Get the time buckets of the trace. They are computed again, and the
+     * bucket call graphs discarded, if the end of the trace moved.
+     *
+     * @return The buckets, or <code>null</code> if the trace is too short to
+     *         be split in buckets
+     */
+    private synchronized @Nullable BucketLayout getBuckets() {
+        ITmfTrace trace = getTrace();
+        if (trace == null) {
+            return null;
+        }
+        long traceStart = trace.getStartTime().toNanos();
+        long traceEnd = trace.getEndTime().toNanos();
+        BucketLayout buckets = fBuckets;
+        if (buckets != null && buckets.fTraceEnd == traceEnd && buckets.fNbBuckets == fNbBuckets) {
+            return buckets;
+        }
+        fBucketCallgraphs.invalidateAll();
+        long width = (traceEnd - traceStart) / fNbBuckets;
+        buckets = width > 0 ? new BucketLayout(traceStart, width, fNbBuckets, traceEnd) : null;
+        fBuckets = buckets;
+        return buckets;
+    }
+
+    /**
+     * Set the number of time buckets of the trace for which partial call
+     * graphs are kept to build the range call graphs
+     *
+     * @param nbBuckets
+     *            The number of buckets
+     */
+    @VisibleForTesting
+    public synchronized void setBucketCount(int nbBuckets) {
+        fNbBuckets = Math.max(1, nbBuckets);
+        fRangeCallgraphs.invalidateAll();
+    }
+
+    /**
+     * Build the callgraph of a time range by aggregating the callstack for the
+     * whole range, without the call graphs of the time buckets
+     *
+     * @param start
+     *            The start of the range
+     * @param end
+     *            The end of the range
+     * @return The callgraph of the range
+     */
+    @VisibleForTesting
+    public CallGraph buildCallGraph(ITmfTimestamp start, ITmfTimestamp end) {
+        CallGraph cg = new CallGraph();
+        executeForRange(cg, new TmfTimeRange(start, end), new NullProgressMonitor());
+        return cg;
+    }
+
+    private static int countCallSites(CallGraph callgraph) {
+        List<ICallStackElement> leaves = new ArrayList<>();
+        for (ICallStackElement element : callgraph.getElements()) {
+            getLeafElements(element, leaves);
+        }
+        int count = 0;
+        for (ICallStackElement leaf : leaves) {
+            for (AggregatedCallSite callsite : callgraph.getCallingContextTree(leaf)) {
+                count += countCallSites(callsite);
+            }
+        }
+        return count;
+    }
+
+    private static int countCallSites(AggregatedCallSite callsite) {
+        int count = 1;
+        for (AggregatedCallSite callee : callsite.getCallees()) {
+            count += countCallSites(callee);
+        }
+        return count;
+    }
+
+    private static TmfTimeRange getRange(long start, long end) {
+        return new TmfTimeRange(TmfTimestamp.fromNanos(start), TmfTimestamp.fromNanos(end));
+    }
+
+    private static void mergeCallGraph(CallGraph destination, CallGraph source) {
+        List<ICallStackElement> leaves = new ArrayList<>();
+        for (ICallStackElement element : source.getElements()) {
+            getLeafElements(element, leaves);
         }
-        int threadId = function.getThreadId();
-        long lastSampleEnd = start;
-
-        AbstractCalledFunction nextFunction = (AbstractCalledFunction) callstack.getNextFunction(function.getStart(), nextLevel, function, model, Math.max(function.getStart(), start), Math.min(function.getEnd(), end));
-        while (nextFunction != null) {
-            // Add sampling data of the time between next function and beginning of next
-            // level
-            if (threadId > 0) {
-                Collection<AggregatedCallSite> samplingData = model.getSamplingData(threadId, lastSampleEnd, nextFunction.getStart());
-                samplingData.forEach(aggregatedCall::addChild);
-                lastSampleEnd = nextFunction.getEnd();
+        for (ICallStackElement leaf : leaves) {
+            for (AggregatedCallSite callsite : source.getCallingContextTree(leaf)) {
+                // Copy the callsites, the source callgraph must not be modified
+                destination.addAggregatedCallSite(leaf, callsite.copyOf());
             }
-            AggregatedCalledFunction aggregatedChild = createCallSite(CallStackSymbolFactory.createSymbol(nextFunction.getSymbol(), element, nextFunction.getStart()));
-            iterateOverCallstack(element, callstack, nextFunction, nextLevel + 1, aggregatedChild, model, start, end, monitor);
-            aggregatedCall.addChild(nextFunction, aggregatedChild);
-            nextFunction = (AbstractCalledFunction) callstack.getNextFunction(nextFunction.getEnd(), nextLevel, function, model, Math.max(function.getStart(), start), Math.min(function.getEnd(), end));
-        }
-        // Get the sampling to the end of the function
-        if (threadId > 0) {
-            Collection<AggregatedCallSite> samplingData = model.getSamplingData(threadId, lastSampleEnd, function.getEnd() - lastSampleEnd);
-            samplingData.forEach(aggregatedCall::addChild);
         }
     }
 
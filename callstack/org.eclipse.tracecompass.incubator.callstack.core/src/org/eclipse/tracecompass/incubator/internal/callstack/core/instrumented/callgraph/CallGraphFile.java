@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.Activator;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.symbol.ResolvableSymbol;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.symbol.StringSymbol;
+
+/**
+ * Reads and writes the call graph of a complete callstack in a supplementary
+ * file, so that it does not have to be computed again when the trace is
+ * reopened. The file is valid only for the state system history file it was
+ * computed from: its size and modification time are saved in the header and
+ * the file is ignored if they changed.
+ *
+ * The statistics of the calls are not kept per call: the state of the
+ * statistics of the durations, self times and CPU times is saved and restored
+ * as is. Only the calls with the minimum and maximum values are lost.
+ *
+ * <pre>
+ * file:     int magic, int version, long ssModified, long ssLength,
+ *           int nbLeaves, leaf*
+ * leaf:     int nbNames, UTF names from the root element to the leaf,
+ *           int nbCallsites, callsite*
+ * callsite: symbol, long duration, long selfTime, long cpuTime, int pid,
+ *           statistics of the durations, self times and CPU times,
+ *           int nbChildren, callsite*
+ * statistics: long nbElements, long min, long max, long total,
+ *           double mean, double variance accumulator
+ * symbol:   byte 0, UTF string or byte 1, long address, int pid, long time
+ * </pre>
+ *
+ * The whole file is compressed with gzip.
+ */
+public final class CallGraphFile {
+
+    private static final int MAGIC = 0x43474631;
+    private static final int VERSION = 2;
+    private static final byte STRING_SYMBOL = 0;
+    private static final byte RESOLVABLE_SYMBOL = 1;
+
+    private CallGraphFile() {
+        // Utility class
+    }
+
+    /**
+     * Write a call graph to a file
+     *
+     * @param file
+     *            The file to write
+     * @param ssFile
+     *            The history file of the state system the call graph was
+     *            computed from
+     * @param callgraph
+     *            The call graph to write
+     * @param leaves
+     *            The leaf elements of the callstack series
+     */
+    public static void write(File file, File ssFile, CallGraph callgraph, Collection<ICallStackElement> leaves) {
+        // Only call graphs of instrumented functions can be persisted
+        for (ICallStackElement leaf : leaves) {
+            for (AggregatedCallSite callsite : callgraph.getCallingContextTree(leaf)) {
+                if (!isPersistable(callsite)) {
+                    return;
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(ssFile.lastModified());
+            out.writeLong(ssFile.length());
+            out.writeInt(leaves.size());
+            for (ICallStackElement leaf : leaves) {
+                List<String> names = new ArrayList<>();
+                ICallStackElement element = leaf;
+                while (element != null) {
+                    names.add(0, element.getName());
+                    element = element.getParentElement();
+                }
+                out.writeInt(names.size());
+                for (String name : names) {
+                    out.writeUTF(name);
+                }
+                Collection<AggregatedCallSite> callsites = callgraph.getCallingContextTree(leaf);
+                out.writeInt(callsites.size());
+                for (AggregatedCallSite callsite : callsites) {
+                    writeCallSite(out, (AggregatedCalledFunction) callsite);
+                }
+            }
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Error writing the call graph file " + file, e); //$NON-NLS-1$
+            file.delete();
+        }
+    }
+
+    /**
+     * Read a call graph from a file, if it is valid for the state system
+     * history file
+     *
+     * @param file
+     *            The file to read
+     * @param ssFile
+     *            The history file of the state system of the callstack
+     * @param rootElements
+     *            The root elements of the callstack series
+     * @return The call graph, or <code>null</code> if the file does not exist
+     *         or is not valid
+     */
+    public static @Nullable CallGraph read(File file, File ssFile, Collection<ICallStackElement> rootElements) {
+        if (!file.exists() || !ssFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != ssFile.lastModified() || in.readLong() != ssFile.length()) {
+                return null;
+            }
+            CallGraph callgraph = new CallGraph();
+            int nbLeaves = in.readInt();
+            for (int i = 0; i < nbLeaves; i++) {
+                int nbNames = in.readInt();
+                Collection<ICallStackElement> candidates = rootElements;
+                ICallStackElement leaf = null;
+                for (int j = 0; j < nbNames; j++) {
+                    String name = in.readUTF();
+                    leaf = candidates.stream().filter(element -> element.getName().equals(name)).findFirst().orElse(null);
+                    if (leaf == null) {
+                        // The callstack does not match the file anymore
+                        return null;
+                    }
+                    candidates = leaf.getChildrenElements();
+                }
+                int nbCallsites = in.readInt();
+                for (int j = 0; j < nbCallsites; j++) {
+                    AggregatedCalledFunction callsite = readCallSite(in);
+                    if (leaf != null) {
+                        callgraph.addAggregatedCallSite(leaf, callsite);
+                    }
+                }
+            }
+            return callgraph;
+        } catch (IOException | IllegalArgumentException e) {
+            Activator.getInstance().logWarning("Error reading the call graph file " + file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private static boolean isPersistable(WeightedTree<ICallStackSymbol> tree) {
+        if (!(tree instanceof AggregatedCalledFunction) || !tree.getExtraDataTrees(0).isEmpty()) {
+            return false;
+        }
+        Object symbol = tree.getObject();
+        if (!(symbol instanceof StringSymbol || symbol instanceof ResolvableSymbol)) {
+            return false;
+        }
+        for (WeightedTree<ICallStackSymbol> child : tree.getChildren()) {
+            if (!isPersistable(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeCallSite(DataOutputStream out, AggregatedCalledFunction callsite) throws IOException {
+        ICallStackSymbol symbol = callsite.getObject();
+        if (symbol instanceof ResolvableSymbol) {
+            ResolvableSymbol resolvable = (ResolvableSymbol) symbol;
+            out.writeByte(RESOLVABLE_SYMBOL);
+            out.writeLong(resolvable.getAddress());
+            out.writeInt(resolvable.getPid());
+            out.writeLong(resolvable.getTimestamp());
+        } else {
+            out.writeByte(STRING_SYMBOL);
+            out.writeUTF(String.valueOf(symbol));
+        }
+        out.writeLong(callsite.getDuration());
+        out.writeLong(callsite.getSelfTime());
+        out.writeLong(callsite.getCpuTime());
+        out.writeInt(callsite.getProcessId());
+
+        for (CallStatistics<ICalledFunction> statistics : callsite.getFunctionStatistics().getPersistedStatistics()) {
+            writeStatistics(out, statistics);
+        }
+
+        Collection<WeightedTree<ICallStackSymbol>> children = callsite.getChildren();
+        out.writeInt(children.size());
+        for (WeightedTree<ICallStackSymbol> child : children) {
+            writeCallSite(out, (AggregatedCalledFunction) child);
+        }
+    }
+
+    private static void writeStatistics(DataOutputStream out, CallStatistics<?> statistics) throws IOException {
+        out.writeLong(statistics.getNbElements());
+        out.writeLong(statistics.getMin());
+        out.writeLong(statistics.getMax());
+        out.writeLong(statistics.getTotal());
+        out.writeDouble(statistics.getMean());
+        out.writeDouble(statistics.getVarianceAccumulator());
+    }
+
+    private static AggregatedCalledFunction readCallSite(DataInputStream in) throws IOException {
+        ICallStackSymbol symbol;
+        byte symbolType = in.readByte();
+        if (symbolType == RESOLVABLE_SYMBOL) {
+            symbol = new ResolvableSymbol(in.readLong(), in.readInt(), in.readLong());
+        } else if (symbolType == STRING_SYMBOL) {
+            symbol = new StringSymbol(in.readUTF());
+        } else {
+            throw new IOException("Unknown symbol type " + symbolType); //$NON-NLS-1$
+        }
+        AggregatedCalledFunction callsite = new AggregatedCalledFunction(symbol, in.readLong(), in.readLong(), in.readLong(), in.readInt());
+
+        for (CallStatistics<ICalledFunction> statistics : callsite.getFunctionStatistics().getPersistedStatistics()) {
+            statistics.restore(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readDouble(), in.readDouble());
+        }
+
+        int nbChildren = in.readInt();
+        for (int i = 0; i < nbChildren; i++) {
+            callsite.addChild(readCallSite(in));
+        }
+        return callsite;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
+
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
+
+/**
+ * Statistics on the calls of an aggregated function. The values are the same
+ * as those of the timing analysis' statistics, with Welford's algorithm for
+ * the variance, but the state of the statistics can also be read and restored,
+ * so that the statistics of a persisted call graph do not have to be computed
+ * again from every call.
+ *
+ * @param <E>
+ *            The type of objects to compute statistics on
+ */
+public class CallStatistics<@NonNull E> implements IStatistics<E> {
+
+    private final Function<E, @Nullable Long> fMapper;
+
+    private @Nullable E fMinObject = null;
+    private @Nullable E fMaxObject = null;
+    private long fMin = Long.MAX_VALUE;
+    private long fMax = Long.MIN_VALUE;
+    private long fNbElements = 0;
+    private long fTotal = 0;
+    private double fMean = 0.0;
+    // The sum of the squared differences from the mean
+    private double fVariance = 0.0;
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            The function that gets the value of an object, or
+     *            <code>null</code> if the object should be ignored
+     */
+    public CallStatistics(Function<E, @Nullable Long> mapper) {
+        fMapper = mapper;
+    }
+
+    @Override
+    public long getMin() {
+        return fMin;
+    }
+
+    @Override
+    public long getMax() {
+        return fMax;
+    }
+
+    @Override
+    public @Nullable E getMinObject() {
+        return fMinObject;
+    }
+
+    @Override
+    public @Nullable E getMaxObject() {
+        return fMaxObject;
+    }
+
+    @Override
+    public long getNbElements() {
+        return fNbElements;
+    }
+
+    @Override
+    public double getMean() {
+        return fMean;
+    }
+
+    @Override
+    public double getStdDev() {
+        return fNbElements > 2 ? Math.sqrt(fVariance / (fNbElements - 1)) : Double.NaN;
+    }
+
+    @Override
+    public long getTotal() {
+        return fTotal;
+    }
+
+    /**
+     * Get the sum of the squared differences from the mean of the values,
+     * which is the state of the variance kept by the statistics
+     *
+     * @return The sum of the squared differences from the mean
+     */
+    double getVarianceAccumulator() {
+        return fVariance;
+    }
+
+    @Override
+    public void update(E object) {
+        Long value = fMapper.apply(object);
+        if (value == null) {
+            return;
+        }
+        long val = value;
+        if (val < fMin) {
+            fMin = val;
+            fMinObject = object;
+        }
+        if (val > fMax) {
+            fMax = val;
+            fMaxObject = object;
+        }
+        fNbElements++;
+        fTotal += val;
+        double delta = val - fMean;
+        fMean += delta / fNbElements;
+        fVariance += delta * (val - fMean);
+    }
+
+    @Override
+    public void merge(IStatistics<E> o) {
+        if (!(o instanceof CallStatistics)) {
+            throw new IllegalArgumentException("Can only merge statistics of the same class"); //$NON-NLS-1$
+        }
+        CallStatistics<E> other = (CallStatistics<E>) o;
+        if (other.fNbElements == 0) {
+            return;
+        }
+        long oldNbElements = fNbElements;
+        double oldMean = fMean;
+        fNbElements += other.fNbElements;
+        fTotal += other.fTotal;
+        fMean = (oldNbElements * oldMean + other.fNbElements * other.fMean) / fNbElements;
+        double delta = other.fMean - oldMean;
+        fVariance = fVariance + other.fVariance + delta * delta * oldNbElements * other.fNbElements / fNbElements;
+        if (other.fMin < fMin) {
+            fMin = other.fMin;
+            fMinObject = other.fMinObject;
+        }
+        if (other.fMax > fMax) {
+            fMax = other.fMax;
+            fMaxObject = other.fMaxObject;
+        }
+    }
+
+    /**
+     * Restore the state of statistics that were persisted. The objects with
+     * the minimum and maximum values are not restored.
+     *
+     * @param nbElements
+     *            The number of values
+     * @param min
+     *            The minimum value
+     * @param max
+     *            The maximum value
+     * @param total
+     *            The sum of the values
+     * @param mean
+     *            The mean of the values
+     * @param variance
+     *            The sum of the squared differences from the mean, as returned
+     *            by {@link #getVarianceAccumulator()}
+     */
+    void restore(long nbElements, long min, long max, long total, double mean, double variance) {
+        fNbElements = nbElements;
+        fMin = min;
+        fMax = max;
+        fTotal = total;
+        fMean = mean;
+        fVariance = variance;
+        fMinObject = null;
+        fMaxObject = null;
+    }
+
+    @Override
+    public String toString() {
+        return "Statistics: [min=" + fMin + ", max=" + fMax + ", nbElements=" + fNbElements + ", mean=" + fMean + ", total=" + fTotal + ']'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+
+}
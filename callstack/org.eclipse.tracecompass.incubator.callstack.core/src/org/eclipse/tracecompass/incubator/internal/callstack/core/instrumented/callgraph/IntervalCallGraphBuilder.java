@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ProcessStatusInterval;
+import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.flamechart.CallStack;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+/**
+ * Builds the call graph of a single callstack from its call intervals at all
+ * depths, read in a single pass with
+ * {@link CallStack#getCallIntervals(long, long, IProgressMonitor)}. The
+ * functions currently on the stack are kept while the intervals are read in
+ * time order, and a function is aggregated to its caller when the following
+ * intervals show that it ended. The result is the same as walking each depth
+ * with
+ * {@link CallStack#getNextFunction(long, int, org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction, IHostModel, long, long)},
+ * without one state system query per function.
+ */
+final class IntervalCallGraphBuilder {
+
+    /**
+     * The number of root functions whose kernel statuses are queried together
+     */
+    private static final int KERNEL_STATUS_BATCH_SIZE = 1000;
+
+    /**
+     * The range of start times of the root functions to aggregate, the other
+     * root functions are skipped with their callees. It also keeps the latest
+     * end time of the aggregated root functions, of all the callstacks built
+     * with it.
+     */
+    static final class RootRange {
+        private final long fStart;
+        private final long fEnd;
+        private final AtomicLong fMaxEnd = new AtomicLong(Long.MIN_VALUE);
+
+        /**
+         * Constructor
+         *
+         * @param start
+         *            The earliest start time of the root functions
+         * @param end
+         *            The end of the start times of the root functions,
+         *            exclusive
+         */
+        public RootRange(long start, long end) {
+            fStart = start;
+            fEnd = end;
+        }
+
+        /**
+         * Get the latest end time of the aggregated root functions
+         *
+         * @return The end time, exclusive, or {@link Long#MIN_VALUE} if no
+         *         function was aggregated
+         */
+        public long getMaxEnd() {
+            return fMaxEnd.get();
+        }
+    }
+
+    /**
+     * A function on the stack, with the aggregated data of its callees
+     */
+    private static final class Frame {
+        private final ITmfStateInterval fInterval;
+        private final int fDepth;
+        private final AbstractCalledFunction fFunction;
+        private final AggregatedCalledFunction fAggregated;
+        private long fLastSampleEnd;
+
+        public Frame(ITmfStateInterval interval, int depth, AbstractCalledFunction function, AggregatedCalledFunction aggregated, long lastSampleEnd) {
+            fInterval = interval;
+            fDepth = depth;
+            fFunction = function;
+            fAggregated = aggregated;
+            fLastSampleEnd = lastSampleEnd;
+        }
+    }
+
+    private final CallGraphAnalysis fAnalysis;
+    private final ICallStackElement fElement;
+    private final CallStack fCallStack;
+    private final IHostModel fModel;
+    private final long fStart;
+    private final long fEnd;
+    private final RootRange fRootRange;
+    private final Map<Integer, Integer> fDepths = new HashMap<>();
+    private final Deque<Frame> fStack = new ArrayDeque<>();
+    // The completed root functions waiting for their kernel statuses
+    private final List<Frame> fPendingRoots = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param analysis
+     *            The analysis creating the aggregated call sites
+     * @param element
+     *            The leaf element whose callstack to aggregate
+     * @param callStack
+     *            The callstack of the element
+     * @param model
+     *            The model of the host on which this callstack was running
+     * @param start
+     *            The start time of the request
+     * @param end
+     *            The end time of the request
+     * @param rootRange
+     *            The range of start times of the root functions to aggregate
+     */
+    public IntervalCallGraphBuilder(CallGraphAnalysis analysis, ICallStackElement element, CallStack callStack, IHostModel model, long start, long end, RootRange rootRange) {
+        fAnalysis = analysis;
+        fRootRange = rootRange;
+        fElement = element;
+        fCallStack = callStack;
+        fModel = model;
+        fStart = start;
+        fEnd = end;
+        for (int depth = 1; depth <= callStack.getMaxDepth(); depth++) {
+            fDepths.put(callStack.getQuarkAtDepth(depth), depth);
+        }
+    }
+
+    /**
+     * Aggregate the functions of the callstack in the call graph
+     *
+     * @param callgraph
+     *            The call graph to fill
+     * @param monitor
+     *            A progress monitor
+     */
+    public void build(CallGraph callgraph, IProgressMonitor monitor) {
+        for (ITmfStateInterval interval : fCallStack.getCallIntervals(fStart, fEnd, monitor)) {
+            if (monitor.isCanceled()) {
+                return;
+            }
+            Integer depth = fDepths.get(interval.getAttribute());
+            if (depth == null || interval.getStartTime() >= fEnd || interval.getEndTime() < fStart) {
+                continue;
+            }
+            // The functions at this depth or deeper, or that ended before this
+            // one starts, are complete
+            Frame top = fStack.peek();
+            while (top != null && (top.fDepth >= depth || top.fInterval.getEndTime() < interval.getStartTime())) {
+                complete(fStack.pop(), callgraph);
+                top = fStack.peek();
+            }
+            if (depth == 1 && (interval.getStartTime() < fRootRange.fStart || interval.getStartTime() >= fRootRange.fEnd)) {
+                if (interval.getStartTime() >= fRootRange.fEnd) {
+                    // The following root functions all start later
+                    break;
+                }
+                // Skip this root function, its callees will have no caller
+                continue;
+            }
+            if (depth > 1 && (top == null || top.fDepth != depth - 1)) {
+                // There is no caller at the previous depth, skip this function
+                continue;
+            }
+            push(interval, depth, top);
+        }
+        while (!fStack.isEmpty()) {
+            complete(fStack.pop(), callgraph);
+        }
+        addPendingRoots(callgraph);
+    }
+
+    private void push(ITmfStateInterval interval, int depth, @Nullable Frame caller) {
+        // A callee is bounded by its caller, which is bounded by the request
+        long start = caller == null ? fStart : caller.fFunction.getStart();
+        long end = caller == null ? fEnd : caller.fFunction.getEnd();
+        AbstractCalledFunction function = CalledFunctionFactory.create(Math.max(start, interval.getStartTime()), Math.min(end, interval.getEndTime() + 1), interval.getValue(),
+                fCallStack.getSymbolKeyAt(interval.getStartTime()), fCallStack.getThreadId(interval.getStartTime()), caller == null ? null : caller.fFunction, fModel);
+        if (caller != null) {
+            // Add sampling data of the time between the previous callee and
+            // this one
+            int threadId = caller.fFunction.getThreadId();
+            if (threadId > 0) {
+                fModel.getSamplingData(threadId, caller.fLastSampleEnd, function.getStart()).forEach(caller.fAggregated::addChild);
+                caller.fLastSampleEnd = function.getEnd();
+            }
+        }
+        AggregatedCalledFunction aggregated = fAnalysis.createCallSite(CallStackSymbolFactory.createSymbol(function.getSymbol(), fElement, function.getStart()));
+        fStack.push(new Frame(interval, depth, function, aggregated, fStart));
+    }
+
+    private void complete(Frame frame, CallGraph callgraph) {
+        // Get the sampling to the end of the function, if it can have callees
+        int threadId = frame.fFunction.getThreadId();
+        if (frame.fDepth < fCallStack.getMaxDepth() && threadId > 0) {
+            fModel.getSamplingData(threadId, frame.fLastSampleEnd, frame.fFunction.getEnd() - frame.fLastSampleEnd).forEach(frame.fAggregated::addChild);
+        }
+        Frame caller = fStack.peek();
+        if (caller != null) {
+            caller.fAggregated.addChild(frame.fFunction, frame.fAggregated);
+            return;
+        }
+        frame.fAggregated.addFunctionCall(frame.fFunction);
+        fRootRange.fMaxEnd.accumulateAndGet(frame.fFunction.getEnd(), Math::max);
+        fPendingRoots.add(frame);
+        if (fPendingRoots.size() >= KERNEL_STATUS_BATCH_SIZE) {
+            addPendingRoots(callgraph);
+        }
+    }
+
+    /**
+     * Add the kernel statuses of the pending root functions, queried in a
+     * single batch, and add the functions to the call graph
+     */
+    private void addPendingRoots(CallGraph callgraph) {
+        if (fPendingRoots.isEmpty()) {
+            return;
+        }
+        List<ICalledFunction> functions = new ArrayList<>(fPendingRoots.size());
+        for (Frame frame : fPendingRoots) {
+            functions.add(frame.fFunction);
+        }
+        List<List<ProcessStatusInterval>> kernelStatuses = fCallStack.getKernelStatuses(functions);
+        for (int i = 0; i < fPendingRoots.size(); i++) {
+            Frame frame = fPendingRoots.get(i);
+            for (ProcessStatusInterval status : kernelStatuses.get(i)) {
+                frame.fAggregated.addKernelStatus(status);
+            }
+            callgraph.addAggregatedCallSite(fElement, frame.fAggregated);
+        }
+        fPendingRoots.clear();
+    }
+
+}
@@ -89,6 +89,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableMap;
@@ -116,11 +117,18 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
      */
     private static final Logger LOGGER = TraceCompassLog.getLogger(FlameChartDataProvider.class);
 
+    private final Collection<ISymbolProvider> fProviders = new ArrayList<>();
+
+    /*
+     * The maps of entry IDs are only modified while building the tree, with
+     * the tree lock held. The fetch methods read the immutable copies of
+     * these maps published after each tree build, without locking.
+     */
+    private final Object fTreeLock = new Object();
     private final Map<Long, FlameChartEntryModel> fEntries = new HashMap<>();
     // Key is the row ID that requires linked data (for instance a kernel row) and
     // value is the row being linked to (the one from the callstack)
     private final BiMap<Long, Long> fLinkedEntries = HashBiMap.create();
-    private final Collection<ISymbolProvider> fProviders = new ArrayList<>();
     private final BiMap<Long, CallStackDepth> fIdToCallstack = HashBiMap.create();
     private final BiMap<Long, ICallStackElement> fIdToElement = HashBiMap.create();
     private final long fTraceId = ENTRY_ID.getAndIncrement();
@@ -128,6 +136,26 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
     /** Cache for entry metadata */
     private final Map<Long, @NonNull Multimap<@NonNull String, @NonNull Object>> fEntryMetadata = new HashMap<>();
 
+    private volatile EntryMaps fEntryMaps = new EntryMaps(ImmutableMap.of(), ImmutableBiMap.of(), ImmutableBiMap.of(), ImmutableMap.of());
+
+    /**
+     * An immutable snapshot of the maps of entry IDs, as of the last tree
+     * build
+     */
+    private static final class EntryMaps {
+        private final Map<Long, FlameChartEntryModel> fEntries;
+        private final BiMap<Long, Long> fLinkedEntries;
+        private final BiMap<Long, CallStackDepth> fIdToCallstack;
+        private final Map<Long, Multimap<String, Object>> fEntryMetadata;
+
+        public EntryMaps(Map<Long, FlameChartEntryModel> entries, BiMap<Long, Long> linkedEntries, BiMap<Long, CallStackDepth> idToCallstack, Map<Long, Multimap<String, Object>> entryMetadata) {
+            fEntries = ImmutableMap.copyOf(entries);
+            fLinkedEntries = ImmutableBiMap.copyOf(linkedEntries);
+            fIdToCallstack = ImmutableBiMap.copyOf(idToCallstack);
+            fEntryMetadata = ImmutableMap.copyOf(entryMetadata);
+        }
+    }
+
     private static class TidInformation {
         private final HostThread fTid;
         private final long fStart;
@@ -163,22 +191,24 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
     private static class ThreadData {
 
         private final ThreadStatusDataProvider fThreadDataProvider;
-        private final List<ThreadEntryModel> fThreadTree = new ArrayList<>();
+        // The thread entries of each tid, in the order of the thread tree
+        private final Map<Integer, List<ThreadEntryModel>> fThreadEntries = new HashMap<>();
         private final Status fStatus;
 
         public ThreadData(ThreadStatusDataProvider dataProvider, List<TimeGraphEntryModel> threadTree, Status status) {
             fThreadDataProvider = dataProvider;
             for (TimeGraphEntryModel model : threadTree) {
                 if (model instanceof ThreadEntryModel) {
-                    fThreadTree.add((ThreadEntryModel) model);
+                    ThreadEntryModel threadEntry = (ThreadEntryModel) model;
+                    fThreadEntries.computeIfAbsent(threadEntry.getThreadId(), tid -> new ArrayList<>()).add(threadEntry);
                 }
             }
             fStatus = status;
         }
 
         public @Nullable Map<String, String> fetchTooltip(int threadId, long time, @Nullable IProgressMonitor monitor) {
-            for (ThreadEntryModel entry : fThreadTree) {
-                if (entry.getThreadId() == threadId && entry.getStartTime() <= time && entry.getEndTime() >= time) {
+            for (ThreadEntryModel entry : fThreadEntries.getOrDefault(threadId, Collections.emptyList())) {
+                if (entry.getStartTime() <= time && entry.getEndTime() >= time) {
                     TmfModelResponse<Map<String, String>> tooltip = fThreadDataProvider.fetchTooltip(FetchParametersUtils.selectionTimeQueryToMap(new SelectionTimeQueryFilter(Collections.singletonList(time), Collections.singleton(entry.getId()))), monitor);
                     return tooltip.getModel();
                 }
@@ -186,6 +216,23 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             return null;
         }
 
+        /**
+         * Get the IDs of the thread entries of the requested tids
+         */
+        public BiMap<Long, Integer> getThreadEntryIds(List<TidInformation> tids) {
+            BiMap<Long, Integer> tidEntries = HashBiMap.create();
+            for (TidInformation tidInfo : tids) {
+                int tid = tidInfo.fTid.getTid();
+                List<ThreadEntryModel> entries = fThreadEntries.get(tid);
+                // FIXME: There may be many entries for one tid, only the first
+                // one is used for now.
+                if (entries != null && !tidEntries.containsValue(tid)) {
+                    tidEntries.put(entries.get(0).getId(), tid);
+                }
+            }
+            return tidEntries;
+        }
+
     }
 
     private final LoadingCache<Pair<Integer, ICalledFunction>, @Nullable String> fTimeEventNames = Objects.requireNonNull(CacheBuilder.newBuilder()
@@ -225,8 +272,8 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
 
     private final String fAnalysisId;
     private final FlameChartArrowProvider fArrowProvider;
-    private @Nullable TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fCached;
-    private @Nullable ThreadData fThreadData = null;
+    private volatile @Nullable TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fCached;
+    private volatile @Nullable ThreadData fThreadData = null;
 
     /**
      * Constructor
@@ -257,15 +304,9 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         }
         List<ITimeGraphArrow> tgArrows = new ArrayList<>();
         // First, get the distinct callstacks
-        List<CallStackDepth> csList = new ArrayList<>();
-        synchronized (fIdToCallstack) {
-            // Quick copy the values to a list to avoid keeping the lock for too
-            // long, adding to a hashSet takes time to calculate the CallStack's
-            // hash.
-            csList.addAll(fIdToCallstack.values());
-        }
+        BiMap<Long, CallStackDepth> idToCallstack = fEntryMaps.fIdToCallstack;
         Set<CallStack> callstacks = new HashSet<>();
-        for (CallStackDepth csd : csList) {
+        for (CallStackDepth csd : idToCallstack.values()) {
             callstacks.add(csd.getCallStack());
         }
 
@@ -282,8 +323,8 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
                  */
                 continue;
             }
-            Long src = findEntry(callstacks, edge.getSource(), interval.getStartTime());
-            Long dst = findEntry(callstacks, edge.getDestination(), interval.getEndTime() + 1);
+            Long src = findEntry(idToCallstack, callstacks, edge.getSource(), interval.getStartTime());
+            Long dst = findEntry(idToCallstack, callstacks, edge.getDestination(), interval.getEndTime() + 1);
             if (src != null && dst != null) {
                 long duration = interval.getEndTime() - interval.getStartTime() + 1;
                 tgArrows.add(new TimeGraphArrow(src, dst, interval.getStartTime(), duration, edge.getId()));
@@ -293,7 +334,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         return new TmfModelResponse<>(tgArrows, Status.COMPLETED, CommonStatusMessage.COMPLETED);
     }
 
-    private @Nullable Long findEntry(Set<CallStack> callstacks, HostThread hostThread, long ts) {
+    private static @Nullable Long findEntry(BiMap<Long, CallStackDepth> idToCallstack, Set<CallStack> callstacks, HostThread hostThread, long ts) {
 
         for (CallStack callstack : callstacks) {
             // Get the host thread running on the callstack and compare with desired
@@ -304,9 +345,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             // We found the callstack, find the right depth and its entry id
             int currentDepth = callstack.getCurrentDepth(ts);
             CallStackDepth csd = new CallStackDepth(callstack, currentDepth);
-            synchronized (fIdToCallstack) {
-                return fIdToCallstack.inverse().get(csd);
-            }
+            return idToCallstack.inverse().get(csd);
         }
         return null;
     }
@@ -320,22 +359,23 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
                 // No time specified
                 return new TmfModelResponse<>(null, Status.COMPLETED, CommonStatusMessage.COMPLETED);
             }
-            Map<Long, FlameChartEntryModel> entries = getSelectedEntries(fetchParameters);
+            EntryMaps entryMaps = fEntryMaps;
+            Map<Long, FlameChartEntryModel> entries = getSelectedEntries(entryMaps, fetchParameters);
             if (entries.size() != 1) {
                 // Not the expected size of tooltip, just return empty
                 return new TmfModelResponse<>(null, Status.COMPLETED, CommonStatusMessage.COMPLETED);
             }
             Entry<@NonNull Long, @NonNull FlameChartEntryModel> entry = entries.entrySet().iterator().next();
-            Map<String, String> tooltip = getTooltip(entry.getKey(), entry.getValue(), times.get(0), monitor);
+            Map<String, String> tooltip = getTooltip(entryMaps, entry.getKey(), entry.getValue(), times.get(0), monitor);
 
             return new TmfModelResponse<>(tooltip, Status.COMPLETED, CommonStatusMessage.COMPLETED);
         }
     }
 
-    private @Nullable Map<String, String> getTooltip(Long entryId, FlameChartEntryModel entryModel, Long time, @Nullable IProgressMonitor monitor) {
+    private @Nullable Map<String, String> getTooltip(EntryMaps entryMaps, Long entryId, FlameChartEntryModel entryModel, Long time, @Nullable IProgressMonitor monitor) {
         switch (entryModel.getEntryType()) {
         case FUNCTION: {
-            CallStackDepth selectedDepth = fIdToCallstack.get(entryId);
+            CallStackDepth selectedDepth = entryMaps.fIdToCallstack.get(entryId);
             if (selectedDepth == null) {
                 return null;
             }
@@ -362,11 +402,11 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         case KERNEL:
             // Get the tooltip from the the ThreadStatusDataProvider
             // First get the linked function to know which TID to retrieve
-            Long csId = fLinkedEntries.get(entryId);
+            Long csId = entryMaps.fLinkedEntries.get(entryId);
             if (csId == null) {
                 return null;
             }
-            CallStackDepth selectedDepth = fIdToCallstack.get(csId);
+            CallStackDepth selectedDepth = entryMaps.fIdToCallstack.get(csId);
 
             if (selectedDepth == null) {
                 return null;
@@ -394,9 +434,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
 
     // Get an entry for a quark
     private long getEntryId(CallStackDepth stack) {
-        synchronized (fIdToCallstack) {
-            return fIdToCallstack.inverse().computeIfAbsent(stack, q -> ENTRY_ID.getAndIncrement());
-        }
+        return fIdToCallstack.inverse().computeIfAbsent(stack, q -> ENTRY_ID.getAndIncrement());
     }
 
     private long getEntryId(ICallStackElement instrumentedCallStackElement) {
@@ -410,55 +448,68 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
 
     @Override
     public TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fetchTree(Map<String, Object> fetchParameters, @Nullable IProgressMonitor monitor) {
-        if (fCached != null) {
-            return fCached;
+        TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> cached = fCached;
+        if (cached != null) {
+            return cached;
         }
 
         try (FlowScopeLog scope = new FlowScopeLogBuilder(LOGGER, Level.FINE, "FlameChartDataProvider#fetchTree") //$NON-NLS-1$
                 .setCategory(getClass().getSimpleName()).build()) {
-            IFlameChartProvider fcProvider = fFcProvider;
-            boolean complete = fcProvider.isComplete();
-            CallStackSeries callstack = fcProvider.getCallStackSeries();
-            if (callstack == null) {
-                return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, CommonStatusMessage.ANALYSIS_INITIALIZATION_FAILED);
-            }
-            long start = getTrace().getStartTime().getValue();
-            long end = Math.max(start, fcProvider.getEnd());
-
-            // Initialize the first element of the tree
-            ImmutableList.Builder<FlameChartEntryModel> builder = ImmutableList.builder();
-            FlameChartEntryModel traceEntry = new FlameChartEntryModel(fTraceId, -1, Collections.singletonList(getTrace().getName()), start, end, FlameChartEntryModel.EntryType.TRACE);
-            builder.add(traceEntry);
-
-            FlameChartEntryModel callStackRoot = traceEntry;
-            // If there is more than one callstack objects in the analysis, create a root
-            // per series
-            boolean needsKernel = false;
-            for (ICallStackElement element : callstack.getRootElements()) {
-                if (monitor != null && monitor.isCanceled()) {
-                    return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
+            synchronized (fTreeLock) {
+                cached = fCached;
+                if (cached != null) {
+                    return cached;
                 }
-                needsKernel |= processCallStackElement(element, builder, callStackRoot);
-            }
-            // Initialize the thread status data provider
-            if (needsKernel) {
-                prepareKernelData(monitor, start);
+                return buildTree(monitor);
             }
-            List<FlameChartEntryModel> tree = builder.build();
-            tree.forEach(entry -> fEntries.put(entry.getId(), entry));
+        }
+    }
 
-            for (FlameChartEntryModel model : tree) {
-                fEntryMetadata.put(model.getId(), model.getMetadata());
-            }
+    private TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> buildTree(@Nullable IProgressMonitor monitor) {
+        IFlameChartProvider fcProvider = fFcProvider;
+        boolean complete = fcProvider.isComplete();
+        CallStackSeries callstack = fcProvider.getCallStackSeries();
+        if (callstack == null) {
+            return new TmfModelResponse<>(null, ITmfResponse.Status.FAILED, CommonStatusMessage.ANALYSIS_INITIALIZATION_FAILED);
+        }
+        long start = getTrace().getStartTime().getValue();
+        long end = Math.max(start, fcProvider.getEnd());
+
+        // Initialize the first element of the tree
+        ImmutableList.Builder<FlameChartEntryModel> builder = ImmutableList.builder();
+        FlameChartEntryModel traceEntry = new FlameChartEntryModel(fTraceId, -1, Collections.singletonList(getTrace().getName()), start, end, FlameChartEntryModel.EntryType.TRACE);
+        builder.add(traceEntry);
 
-            if (complete) {
-                TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> response = new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree),
-                        ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
-                fCached = response;
-                return response;
+        FlameChartEntryModel callStackRoot = traceEntry;
+        // If there is more than one callstack objects in the analysis, create a root
+        // per series
+        boolean needsKernel = false;
+        for (ICallStackElement element : callstack.getRootElements()) {
+            if (monitor != null && monitor.isCanceled()) {
+                return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
             }
-            return new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree), ITmfResponse.Status.RUNNING, CommonStatusMessage.RUNNING);
+            needsKernel |= processCallStackElement(element, builder, callStackRoot);
         }
+        // Initialize the thread status data provider
+        if (needsKernel) {
+            prepareKernelData(monitor, start);
+        }
+        List<FlameChartEntryModel> tree = builder.build();
+        tree.forEach(entry -> fEntries.put(entry.getId(), entry));
+
+        for (FlameChartEntryModel model : tree) {
+            fEntryMetadata.put(model.getId(), model.getMetadata());
+        }
+        // Publish the entries of this tree to the fetch methods
+        fEntryMaps = new EntryMaps(fEntries, fLinkedEntries, fIdToCallstack, fEntryMetadata);
+
+        if (complete) {
+            TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> response = new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree),
+                    ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
+            fCached = response;
+            return response;
+        }
+        return new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree), ITmfResponse.Status.RUNNING, CommonStatusMessage.RUNNING);
     }
 
     private void prepareKernelData(@Nullable IProgressMonitor monitor, long start) {
@@ -522,7 +573,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
     }
 
     // Get the selected entries with the quark
-    private BiMap<Long, FlameChartEntryModel> getSelectedEntries(Map<String, Object> fetchParameters) {
+    private static BiMap<Long, FlameChartEntryModel> getSelectedEntries(EntryMaps entryMaps, Map<String, Object> fetchParameters) {
         BiMap<Long, FlameChartEntryModel> selectedEntries = HashBiMap.create();
 
         List<Long> ids = DataProviderParameterUtils.extractSelectedItems(fetchParameters);
@@ -530,7 +581,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             return selectedEntries;
         }
         for (Long selectedItem : ids) {
-            FlameChartEntryModel entryModel = fEntries.get(selectedItem);
+            FlameChartEntryModel entryModel = entryMaps.fEntries.get(selectedItem);
             if (entryModel != null) {
                 selectedEntries.put(selectedItem, entryModel);
             }
@@ -543,7 +594,8 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         try (FlowScopeLog scope = new FlowScopeLogBuilder(LOGGER, Level.FINE, "FlameChartDataProvider#fetchRowModel") //$NON-NLS-1$
                 .setCategory(getClass().getSimpleName()).build()) {
 
-            Map<Long, FlameChartEntryModel> entries = getSelectedEntries(fetchParameters);
+            EntryMaps entryMaps = fEntryMaps;
+            Map<Long, FlameChartEntryModel> entries = getSelectedEntries(entryMaps, fetchParameters);
             List<Long> times = DataProviderParameterUtils.extractTimeRequested(fetchParameters);
             if (times == null) {
                 // No time specified
@@ -553,23 +605,23 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
                 // this is a request for a follow event.
                 Entry<@NonNull Long, @NonNull FlameChartEntryModel> entry = entries.entrySet().iterator().next();
                 if (times.get(0) == Long.MIN_VALUE) {
-                    List<ITimeGraphRowModel> followEvents = getFollowEvent(entry, times.get(times.size() - 1), false);
+                    List<ITimeGraphRowModel> followEvents = getFollowEvent(entryMaps, entry, times.get(times.size() - 1), false);
                     TimeGraphModel model = followEvents == null ? null : new TimeGraphModel(followEvents);
                     return new TmfModelResponse<>(model, ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
                 } else if (times.get(times.size() - 1) == Long.MAX_VALUE) {
-                    List<ITimeGraphRowModel> followEvents = getFollowEvent(entry, times.get(0), true);
+                    List<ITimeGraphRowModel> followEvents = getFollowEvent(entryMaps, entry, times.get(0), true);
                     TimeGraphModel model = followEvents == null ? null : new TimeGraphModel(followEvents);
                     return new TmfModelResponse<>(model, ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
                 }
             }
             // For each kernel status entry, add the first row of the callstack
-            addRequiredCallstacks(entries);
+            addRequiredCallstacks(entryMaps, entries);
 
             SubMonitor subMonitor = SubMonitor.convert(monitor, "FlameChartDataProvider#fetchRowModel", 2); //$NON-NLS-1$
             IFlameChartProvider fcProvider = fFcProvider;
             boolean complete = fcProvider.isComplete();
 
-            Map<Long, List<ITimeGraphState>> csRows = getCallStackRows(fetchParameters, entries, subMonitor);
+            Map<Long, List<ITimeGraphState>> csRows = getCallStackRows(entryMaps, fetchParameters, entries, subMonitor);
             if (csRows == null) {
                 // getRowModel returns null if the query was cancelled.
                 return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
@@ -582,12 +634,12 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         }
     }
 
-    private void addRequiredCallstacks(Map<Long, FlameChartEntryModel> entries) {
+    private static void addRequiredCallstacks(EntryMaps entryMaps, Map<Long, FlameChartEntryModel> entries) {
         Map<Long, FlameChartEntryModel> toAdd = new HashMap<>();
         for (Long id : entries.keySet()) {
-            Long csId = fLinkedEntries.get(id);
+            Long csId = entryMaps.fLinkedEntries.get(id);
             if (csId != null) {
-                FlameChartEntryModel entry = fEntries.get(csId);
+                FlameChartEntryModel entry = entryMaps.fEntries.get(csId);
                 if (entry != null) {
                     toAdd.put(csId, entry);
                 }
@@ -596,7 +648,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         entries.putAll(toAdd);
     }
 
-    private @Nullable Map<Long, List<ITimeGraphState>> getCallStackRows(Map<String, Object> fetchParameters, Map<Long, FlameChartEntryModel> entries, SubMonitor subMonitor)
+    private @Nullable Map<Long, List<ITimeGraphState>> getCallStackRows(EntryMaps entryMaps, Map<String, Object> fetchParameters, Map<Long, FlameChartEntryModel> entries, SubMonitor subMonitor)
             throws IndexOutOfBoundsException, TimeRangeException {
 
         // Get the data for the model entries that are of type function
@@ -604,7 +656,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         List<TidInformation> tids = new ArrayList<>();
         Map<Long, CallStackDepth> csEntries = new HashMap<>();
         for (Entry<Long, @NonNull FlameChartEntryModel> entry : entries.entrySet()) {
-            CallStackDepth selectedDepth = fIdToCallstack.get(entry.getKey());
+            CallStackDepth selectedDepth = entryMaps.fIdToCallstack.get(entry.getKey());
             if (selectedDepth != null && entry.getValue().getEntryType().equals(EntryType.FUNCTION)) {
                 csEntries.put(entry.getKey(), selectedDepth);
             }
@@ -640,7 +692,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             // See if any more row needs to be filled with these function's data
             // TODO: Kernel might not be the only type of linked entries (for instance,
             // locations of sampling data)
-            Long linked = fLinkedEntries.inverse().get(entry.getKey());
+            Long linked = entryMaps.fLinkedEntries.inverse().get(entry.getKey());
             if (linked == null || !entries.containsKey(linked)) {
                 continue;
             }
@@ -654,36 +706,35 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             }
         }
         if (!tids.isEmpty()) {
-            rows.putAll(getKernelStates(tids, times, predicates, subMonitor));
+            rows.putAll(getKernelStates(entryMaps, tids, times, predicates, subMonitor));
         }
         subMonitor.worked(1);
         return rows;
     }
 
-    private Map<Long, List<ITimeGraphState>> getKernelStates(List<TidInformation> tids, List<Long> times, Map<Integer, Predicate<Multimap<String, Object>>> predicates, SubMonitor monitor) {
+    private Map<Long, List<ITimeGraphState>> getKernelStates(EntryMaps entryMaps, List<TidInformation> tids, List<Long> times, Map<Integer, Predicate<Multimap<String, Object>>> predicates, SubMonitor monitor) {
         // Get the thread statuses from the thread status provider
         ThreadData threadData = fThreadData;
         if (threadData == null) {
             return Collections.emptyMap();
 
         }
-        List<ThreadEntryModel> tree = threadData.fThreadTree;
 
         // FIXME: A callstack analysis may be for an experiment that span many hosts,
         // the thread data provider will be a composite and the models may be for
         // different host IDs. But for now, suppose the callstack is a composite also
         // and the trace filtered the right host.
-        BiMap<Long, Integer> threadModelIds = filterThreads(tree, tids);
+        BiMap<Long, Integer> threadModelIds = threadData.getThreadEntryIds(tids);
         SelectionTimeQueryFilter tidFilter = new SelectionTimeQueryFilter(times, threadModelIds.keySet());
         TmfModelResponse<TimeGraphModel> rowModel = threadData.fThreadDataProvider.fetchRowModel(FetchParametersUtils.selectionTimeQueryToMap(tidFilter), monitor);
         TimeGraphModel rowModels = rowModel.getModel();
         if (rowModel.getStatus().equals(Status.CANCELLED) || rowModel.getStatus().equals(Status.FAILED) || rowModels == null) {
             return Collections.emptyMap();
         }
-        return mapThreadStates(rowModels.getRows(), threadModelIds, tids, predicates, monitor);
+        return mapThreadStates(entryMaps, rowModels.getRows(), threadModelIds, tids, predicates, monitor);
     }
 
-    private Map<Long, List<ITimeGraphState>> mapThreadStates(List<ITimeGraphRowModel> rowModels, BiMap<Long, Integer> threadModelIds, List<TidInformation> tids, Map<Integer, Predicate<Multimap<String, Object>>> predicates, SubMonitor monitor) {
+    private Map<Long, List<ITimeGraphState>> mapThreadStates(EntryMaps entryMaps, List<ITimeGraphRowModel> rowModels, BiMap<Long, Integer> threadModelIds, List<TidInformation> tids, Map<Integer, Predicate<Multimap<String, Object>>> predicates, SubMonitor monitor) {
         ImmutableMap<Long, ITimeGraphRowModel> statusRows = Maps.uniqueIndex(rowModels, m -> m.getEntryID());
         // Match the states of thread status to the requested tid lines
         Long prevId = -1L;
@@ -692,7 +743,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         // The tid information data are ordered by id and times
         for (TidInformation tidInfo : tids) {
             // Get the ID of the linked callstack entry ID to get the filter data
-            Long linkedCsEntryId = fLinkedEntries.get(tidInfo.fLinked);
+            Long linkedCsEntryId = entryMaps.fLinkedEntries.get(tidInfo.fLinked);
             if (linkedCsEntryId == null) {
                 // fallback to the entry's own ID
                 linkedCsEntryId = tidInfo.fLinked;
@@ -727,26 +778,6 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
         return kernelStatuses;
     }
 
-    private static BiMap<Long, Integer> filterThreads(List<ThreadEntryModel> model, List<TidInformation> tids) {
-        // Get the entry model IDs that match requested tids
-        BiMap<Long, Integer> tidEntries = HashBiMap.create();
-        Set<Integer> selectedTids = new HashSet<>();
-        for (TidInformation tidInfo : tids) {
-            selectedTids.add(tidInfo.fTid.getTid());
-        }
-        for (ThreadEntryModel entryModel : model) {
-            if (selectedTids.contains(entryModel.getThreadId())) {
-                try {
-                    tidEntries.put(entryModel.getId(), entryModel.getThreadId());
-                } catch (IllegalArgumentException e) {
-                    // FIXME: There may be many entries for one tid, don't rely on exception for
-                    // real workflow. Works for now.
-                }
-            }
-        }
-        return tidEntries;
-    }
-
     private static Collection<TidInformation> getKernelTids(CallStackDepth callStackDepth, Collection<ISegment> states, Long linked) {
 
         List<TidInformation> tids = new ArrayList<>();
@@ -810,6 +841,8 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
      * Get the next or previous interval for a call stack entry ID, time and
      * direction
      *
+     * @param entryMaps
+     *            The maps of entry IDs to use
      * @param entry
      *            whose key is the ID and value is the quark for the entry whose
      *            next / previous state we are searching for
@@ -820,11 +853,11 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
      * @return the next / previous state encapsulated in a row if it exists, else
      *         null
      */
-    private @Nullable List<ITimeGraphRowModel> getFollowEvent(Entry<Long, FlameChartEntryModel> entry, long time, boolean forward) {
+    private static @Nullable List<ITimeGraphRowModel> getFollowEvent(EntryMaps entryMaps, Entry<Long, FlameChartEntryModel> entry, long time, boolean forward) {
         FlameChartEntryModel value = Objects.requireNonNull(entry.getValue());
         switch (value.getEntryType()) {
         case FUNCTION:
-            CallStackDepth selectedDepth = fIdToCallstack.get(entry.getKey());
+            CallStackDepth selectedDepth = entryMaps.fIdToCallstack.get(entry.getKey());
             if (selectedDepth == null) {
                 return null;
             }
@@ -853,13 +886,14 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
 
     @Override
     public @NonNull Multimap<@NonNull String, @NonNull Object> getFilterData(long entryId, long time, @Nullable IProgressMonitor monitor) {
+        EntryMaps entryMaps = fEntryMaps;
         Multimap<@NonNull String, @NonNull Object> data = ITimeGraphStateFilter.mergeMultimaps(ITimeGraphDataProvider.super.getFilterData(entryId, time, monitor),
-                fEntryMetadata.getOrDefault(entryId, ImmutableMultimap.of()));
-        FlameChartEntryModel entryModel = fEntries.get(entryId);
+                entryMaps.fEntryMetadata.getOrDefault(entryId, ImmutableMultimap.of()));
+        FlameChartEntryModel entryModel = entryMaps.fEntries.get(entryId);
         if (entryModel == null) {
             return data;
         }
-        Map<String, String> tooltip = getTooltip(entryId, entryModel, time, monitor);
+        Map<String, String> tooltip = getTooltip(entryMaps, entryId, entryModel, time, monitor);
         if (tooltip == null) {
             return data;
         }
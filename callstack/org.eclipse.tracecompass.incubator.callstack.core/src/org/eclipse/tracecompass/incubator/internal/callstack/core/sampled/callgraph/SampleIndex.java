@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.sampled.callgraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.AggregatedStackTraces;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.symbol.ResolvableSymbol;
+
+/**
+ * An in-memory index of the samples of a profiling trace, sorted by time, so
+ * that the call graph of a time range can be built without reading the trace
+ * again. Each sample is a timestamp, the index of its element and the ID of
+ * its stack trace.
+ *
+ * Stack traces of addresses are interned in a {@link StackTraceTable}, the
+ * callsites of a stack are created only when building a call graph, once per
+ * distinct stack and element with the weight of all their samples. Samples
+ * added as callsites are kept in a separate table, where identical chains of
+ * stack trace callsites are shared. Their stack IDs are negative.
+ */
+public final class SampleIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Function<ICallStackSymbol, AggregatedCallSite> fCallSiteFactory;
+    private final StackTraceTable fStackTraces = new StackTraceTable();
+    private final List<ICallStackElement> fElements = new ArrayList<>();
+    private final Map<ICallStackElement, Integer> fElementIds = new HashMap<>();
+    private final List<AggregatedCallSite> fCallSites = new ArrayList<>();
+    private final Map<List<ICallStackSymbol>, Integer> fCallSiteIds = new HashMap<>();
+
+    private int fSize = 0;
+    private long[] fTimestamps = new long[INITIAL_CAPACITY];
+    private int[] fElementIndexes = new int[INITIAL_CAPACITY];
+    private int[] fStackIndexes = new int[INITIAL_CAPACITY];
+    private boolean fSorted = true;
+
+    /**
+     * Constructor
+     *
+     * @param callSiteFactory
+     *            The function to create the callsite of a symbol, when
+     *            building the callsites of interned stack traces
+     */
+    public SampleIndex(Function<ICallStackSymbol, AggregatedCallSite> callSiteFactory) {
+        fCallSiteFactory = callSiteFactory;
+    }
+
+    /**
+     * Add a sample with a stack trace of addresses to the index
+     *
+     * @param timestamp
+     *            The time of the sample
+     * @param element
+     *            The element of the sample
+     * @param stackTrace
+     *            The addresses of the stack trace, the bottom of the stack at
+     *            position 0. Empty stack traces are ignored.
+     */
+    public void addSample(long timestamp, ICallStackElement element, long[] stackTrace) {
+        int stackId = fStackTraces.getStackId(element.getSymbolKeyAt(timestamp), stackTrace, timestamp);
+        if (stackId != StackTraceTable.NO_NODE) {
+            addSample(timestamp, getElementId(element), stackId);
+        }
+    }
+
+    /**
+     * Add a sample with a callsite to the index. The callsite is not
+     * modified, it is copied if it is the first one of its kind.
+     *
+     * @param timestamp
+     *            The time of the sample
+     * @param element
+     *            The element of the sample
+     * @param callsite
+     *            The stack trace of the sample
+     */
+    public void addSample(long timestamp, ICallStackElement element, AggregatedCallSite callsite) {
+        addSample(timestamp, getElementId(element), -1 - getCallSiteId(callsite));
+    }
+
+    private void addSample(long timestamp, int elementId, int stackId) {
+        if (fSize == fTimestamps.length) {
+            int capacity = fSize * 2;
+            fTimestamps = Arrays.copyOf(fTimestamps, capacity);
+            fElementIndexes = Arrays.copyOf(fElementIndexes, capacity);
+            fStackIndexes = Arrays.copyOf(fStackIndexes, capacity);
+        }
+        if (fSize > 0 && timestamp < fTimestamps[fSize - 1]) {
+            fSorted = false;
+        }
+        fTimestamps[fSize] = timestamp;
+        fElementIndexes[fSize] = elementId;
+        fStackIndexes[fSize] = stackId;
+        fSize++;
+    }
+
+    private int getElementId(ICallStackElement element) {
+        Integer elementId = fElementIds.get(element);
+        if (elementId == null) {
+            elementId = fElements.size();
+            fElements.add(element);
+            fElementIds.put(element, elementId);
+        }
+        return elementId;
+    }
+
+    private int getCallSiteId(AggregatedCallSite callsite) {
+        List<ICallStackSymbol> symbols = getSymbolChain(callsite);
+        if (symbols != null) {
+            Integer callSiteId = fCallSiteIds.get(symbols);
+            if (callSiteId != null) {
+                return callSiteId;
+            }
+            fCallSiteIds.put(symbols, fCallSites.size());
+        }
+        fCallSites.add(callsite.copyOf());
+        return fCallSites.size() - 1;
+    }
+
+    /**
+     * Get the symbols of a callsite that can be shared, ie a single chain of
+     * stack trace callsites with the weight of one sample
+     */
+    private static @Nullable List<ICallStackSymbol> getSymbolChain(AggregatedCallSite callsite) {
+        List<ICallStackSymbol> symbols = new ArrayList<>();
+        WeightedTree<ICallStackSymbol> tree = callsite;
+        while (true) {
+            if (tree.getClass() != AggregatedStackTraces.class || tree.getWeight() != 1) {
+                return null;
+            }
+            symbols.add(tree.getObject());
+            Collection<WeightedTree<ICallStackSymbol>> children = tree.getChildren();
+            if (children.isEmpty()) {
+                return symbols;
+            }
+            if (children.size() > 1) {
+                return null;
+            }
+            tree = children.iterator().next();
+        }
+    }
+
+    /**
+     * Get the number of samples in this index
+     *
+     * @return The number of samples
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Build the call graph of the samples in a time range
+     *
+     * @param start
+     *            The start of the range
+     * @param end
+     *            The end of the range, inclusive
+     * @return The call graph of the range
+     */
+    public CallGraph getCallGraph(long start, long end) {
+        CallGraph callGraph = new CallGraph();
+        int from = Arrays.binarySearch(fTimestamps, 0, fSize, start);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        // Go back to the first sample at the start time
+        while (from > 0 && fTimestamps[from - 1] == start) {
+            from--;
+        }
+        int to = from;
+        while (to < fSize && fTimestamps[to] <= end) {
+            to++;
+        }
+
+        // Count the samples of each element and stack
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = ((long) fElementIndexes[i] << 32) | (fStackIndexes[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(keys);
+        int i = 0;
+        while (i < keys.length) {
+            long key = keys[i];
+            int count = 1;
+            while (i + count < keys.length && keys[i + count] == key) {
+                count++;
+            }
+            i += count;
+            ICallStackElement element = fElements.get((int) (key >>> 32));
+            int stackId = (int) key;
+            AggregatedCallSite callsite = (stackId >= 0) ? createCallSite(stackId) : fCallSites.get(-1 - stackId).copyOf();
+            callGraph.addAggregatedCallSite(element, withCount(callsite, count));
+        }
+        return callGraph;
+    }
+
+    /**
+     * Create the callsites of an interned stack trace, from the top of the
+     * stack to its bottom
+     */
+    private AggregatedCallSite createCallSite(int stackId) {
+        StackTraceTable stackTraces = fStackTraces;
+        int symbolKey = stackTraces.getSymbolKey(stackId);
+        int node = stackId;
+        AggregatedCallSite callsite = fCallSiteFactory.apply(new ResolvableSymbol(stackTraces.getAddress(node), symbolKey, stackTraces.getTimestamp(node)));
+        node = stackTraces.getCaller(node);
+        while (node != StackTraceTable.NO_NODE) {
+            AggregatedCallSite caller = fCallSiteFactory.apply(new ResolvableSymbol(stackTraces.getAddress(node), symbolKey, stackTraces.getTimestamp(node)));
+            caller.addChild(callsite);
+            callsite = caller;
+            node = stackTraces.getCaller(node);
+        }
+        return callsite;
+    }
+
+    /**
+     * Give a callsite of one sample the weight of a number of samples. The
+     * callsites of samples only have weights, so merging the callsite with
+     * itself count times is the same as multiplying the weight of each of its
+     * nodes by count.
+     */
+    private static AggregatedCallSite withCount(AggregatedCallSite callsite, int count) {
+        if (count == 1) {
+            return callsite;
+        }
+        Deque<WeightedTree<ICallStackSymbol>> toScale = new ArrayDeque<>();
+        toScale.push(callsite);
+        while (!toScale.isEmpty()) {
+            WeightedTree<ICallStackSymbol> tree = toScale.pop();
+            tree.addToWeight(tree.getWeight() * (count - 1L));
+            toScale.addAll(tree.getChildren());
+        }
+        return callsite;
+    }
+
+    /**
+     * Sort the samples by time, to call once all the samples are added and
+     * before building call graphs
+     */
+    public void sort() {
+        if (fSorted) {
+            return;
+        }
+        // Samples of experiments may come slightly out of order
+        Integer[] order = new Integer[fSize];
+        for (int i = 0; i < fSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> fTimestamps[i]));
+        long[] timestamps = new long[fSize];
+        int[] elements = new int[fSize];
+        int[] stacks = new int[fSize];
+        for (int i = 0; i < fSize; i++) {
+            timestamps[i] = fTimestamps[order[i]];
+            elements[i] = fElementIndexes[order[i]];
+            stacks[i] = fStackIndexes[order[i]];
+        }
+        fTimestamps = timestamps;
+        fElementIndexes = elements;
+        fStackIndexes = stacks;
+        fSorted = true;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.sampled.callgraph;
+
+import java.util.Arrays;
+
+/**
+ * An intern table of stack traces, as a trie of addresses. Each distinct stack
+ * trace of a symbol key is a node of the trie, so a stack trace is resolved to
+ * a stable stack ID by walking its addresses, without creating any object.
+ *
+ * The roots of the trie are the symbol keys, whose children are the addresses
+ * at the bottom of the stacks. The nodes are kept in parallel arrays and the
+ * children are found in an open-addressing hash table on the parent and
+ * address.
+ */
+public final class StackTraceTable {
+
+    /** The value of a node that does not exist */
+    public static final int NO_NODE = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int fSize = 0;
+    private int[] fParents = new int[INITIAL_CAPACITY];
+    private long[] fValues = new long[INITIAL_CAPACITY];
+    private long[] fTimestamps = new long[INITIAL_CAPACITY];
+    private int[] fDepths = new int[INITIAL_CAPACITY];
+
+    // The table of children, the nodes are stored as node + 1, 0 being empty
+    private int[] fChildTable = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Get the stack ID of a stack trace, adding it to the table if it is new
+     *
+     * @param symbolKey
+     *            The key to resolve the symbols of this stack trace, see
+     *            {@link org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement#getSymbolKeyAt(long)}
+     * @param stackTrace
+     *            The addresses of the stack trace, the bottom of the stack at
+     *            position 0
+     * @param timestamp
+     *            The time of this stack trace. The symbols of new frames are
+     *            resolved at this time.
+     * @return The stack ID, or {@link #NO_NODE} if the stack trace is empty
+     */
+    public int getStackId(int symbolKey, long[] stackTrace, long timestamp) {
+        if (stackTrace.length == 0) {
+            return NO_NODE;
+        }
+        int node = getOrAddChild(NO_NODE, symbolKey, timestamp);
+        for (long address : stackTrace) {
+            node = getOrAddChild(node, address, timestamp);
+        }
+        return node;
+    }
+
+    private int getOrAddChild(int parent, long value, long timestamp) {
+        int mask = fChildTable.length - 1;
+        int slot = hash(parent, value) & mask;
+        int entry = fChildTable[slot];
+        while (entry != 0) {
+            int node = entry - 1;
+            if (fParents[node] == parent && fValues[node] == value) {
+                return node;
+            }
+            slot = (slot + 1) & mask;
+            entry = fChildTable[slot];
+        }
+        int node = addNode(parent, value, timestamp);
+        fChildTable[slot] = node + 1;
+        // Keep the table at most half full
+        if (fSize * 2 > fChildTable.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private int addNode(int parent, long value, long timestamp) {
+        if (fSize == fParents.length) {
+            int capacity = fSize * 2;
+            fParents = Arrays.copyOf(fParents, capacity);
+            fValues = Arrays.copyOf(fValues, capacity);
+            fTimestamps = Arrays.copyOf(fTimestamps, capacity);
+            fDepths = Arrays.copyOf(fDepths, capacity);
+        }
+        int node = fSize;
+        fParents[node] = parent;
+        fValues[node] = value;
+        fTimestamps[node] = timestamp;
+        fDepths[node] = (parent == NO_NODE) ? 0 : fDepths[parent] + 1;
+        fSize++;
+        return node;
+    }
+
+    private void rehash() {
+        int[] table = new int[fChildTable.length * 2];
+        int mask = table.length - 1;
+        for (int node = 0; node < fSize; node++) {
+            int slot = hash(fParents[node], fValues[node]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = node + 1;
+        }
+        fChildTable = table;
+    }
+
+    private static int hash(int parent, long value) {
+        long hash = value * 0x9E3779B97F4A7C15L + parent;
+        hash ^= (hash >>> 32);
+        return (int) (hash ^ (hash >>> 16));
+    }
+
+    /**
+     * Get the number of nodes in this table
+     *
+     * @return The number of nodes
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Get the depth of a stack, ie the number of addresses in the stack trace
+     *
+     * @param stackId
+     *            The stack ID
+     * @return The number of addresses in the stack trace
+     */
+    public int getDepth(int stackId) {
+        return fDepths[stackId];
+    }
+
+    /**
+     * Get the symbol key of a stack
+     *
+     * @param stackId
+     *            The stack ID
+     * @return The symbol key to resolve the symbols of the stack
+     */
+    public int getSymbolKey(int stackId) {
+        int node = stackId;
+        while (fParents[node] != NO_NODE) {
+            node = fParents[node];
+        }
+        return (int) fValues[node];
+    }
+
+    /**
+     * Get the address of the frame at the top of a stack
+     *
+     * @param stackId
+     *            The stack ID
+     * @return The address of the last function called in this stack
+     */
+    public long getAddress(int stackId) {
+        return fValues[stackId];
+    }
+
+    /**
+     * Get the time at which the frame at the top of a stack was first seen
+     *
+     * @param stackId
+     *            The stack ID
+     * @return The timestamp at which to resolve the symbol of the frame
+     */
+    public long getTimestamp(int stackId) {
+        return fTimestamps[stackId];
+    }
+
+    /**
+     * Get the stack of the caller of the frame at the top of a stack
+     *
+     * @param stackId
+     *            The stack ID
+     * @return The stack ID of the caller, or {@link #NO_NODE} if this is the
+     *         bottom of the stack
+     */
+    public int getCaller(int stackId) {
+        int parent = fParents[stackId];
+        if (parent == NO_NODE || fParents[parent] == NO_NODE) {
+            return NO_NODE;
+        }
+        return parent;
+    }
+
+}
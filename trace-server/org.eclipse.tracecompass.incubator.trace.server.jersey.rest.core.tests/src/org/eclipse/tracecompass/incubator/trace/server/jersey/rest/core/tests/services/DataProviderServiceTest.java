@@ -14,9 +14,14 @@ package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.s
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -27,6 +32,7 @@ import java.util.Set;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.QueryParameters;
@@ -36,6 +42,7 @@ import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.st
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.EntryModelStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.EntryStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.LineModelStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.OutputElementStyleStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TableColumnsOutputResponseStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TableLinesOutputResponseStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TableModelStub;
@@ -45,6 +52,7 @@ import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.st
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TimeGraphEntryStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TimeGraphModelStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TimeGraphRowStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TimeGraphStateStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TreeOutputResponseStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.XyModelStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.XyOutputResponseStub;
@@ -55,7 +63,10 @@ import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils
 import org.eclipse.tracecompass.tmf.core.model.filters.TimeQueryFilter;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 /**
  * Test the {@link DataProviderService}
@@ -115,9 +126,11 @@ public class DataProviderServiceTest extends RestServerTest {
      *
      * @throws InterruptedException
      *             Exception thrown while waiting to execute again
+     * @throws IOException
+     *             Exception thrown while decoding the binary representation
      */
     @Test
-    public void testXYDataProvider() throws InterruptedException {
+    public void testXYDataProvider() throws InterruptedException, IOException {
         long start = 1412670961211260539L;
         long end = 1412670967217750839L;
         try {
@@ -170,6 +183,61 @@ public class DataProviderServiceTest extends RestServerTest {
             assertFalse(xySeries.isEmpty());
             series.close();
 
+            // Wait for the analysis to complete so both representations have the same values
+            iteration = 0;
+            while (!xyModelResponse.isCompleted() && iteration < MAX_ITER) {
+                Thread.sleep(100);
+                Response xyResponse = xySeriesEnpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+                assertEquals("There should be a positive response for the data provider", 200, xyResponse.getStatus());
+                xyModelResponse = xyResponse.readEntity(XyOutputResponseStub.class);
+                assertNotNull(xyModelResponse);
+                iteration++;
+                xyResponse.close();
+            }
+            assertTrue("The analysis did not complete: " + xyModelResponse, xyModelResponse.isCompleted());
+            xyModel = xyModelResponse.getModel();
+            xySeries = xyModel.getSeries();
+
+            // Test getting the XY series in the binary representation
+            Response binarySeries = xySeriesEnpoint.request(MediaType.APPLICATION_OCTET_STREAM).post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the binary representation", 200, binarySeries.getStatus());
+            assertEquals(MediaType.APPLICATION_OCTET_STREAM_TYPE, binarySeries.getMediaType());
+            byte[] bytes = binarySeries.readEntity(byte[].class);
+            binarySeries.close();
+
+            // Decode the binary representation and compare it with the JSON one
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            List<String> dictionary = new ArrayList<>();
+            assertEquals("Binary format version", 2, in.readByte());
+            assertEquals("XY model type", 1, in.readByte());
+            assertEquals("COMPLETED", readBinaryString(in, dictionary));
+            readBinaryString(in, dictionary);
+            assertEquals(xyModel.getTitle(), readBinaryString(in, dictionary));
+            assertEquals(xySeries.size(), readBinaryVarLong(in));
+            Map<String, XySeriesStub> expectedSeries = new HashMap<>();
+            for (XySeriesStub serie : xySeries) {
+                expectedSeries.put(serie.getName(), serie);
+            }
+            for (int i = 0; i < xySeries.size(); i++) {
+                long id = in.readLong();
+                String name = readBinaryString(in, dictionary);
+                XySeriesStub expected = expectedSeries.get(name);
+                assertNotNull("Unexpected series " + name, expected);
+                assertEquals(expected.getId(), id);
+                int nbPoints = (int) readBinaryVarLong(in);
+                assertEquals(expected.getXValues().size(), nbPoints);
+                long x = 0;
+                for (int j = 0; j < nbPoints; j++) {
+                    long zigZag = readBinaryVarLong(in);
+                    x += (zigZag >>> 1) ^ -(zigZag & 1);
+                    assertEquals(expected.getXValues().get(j).longValue(), x);
+                }
+                for (int j = 0; j < nbPoints; j++) {
+                    assertEquals(expected.getYValues().get(j), in.readDouble(), 0.000001);
+                }
+            }
+            assertEquals("The whole binary representation should be read", 0, in.available());
+
         } catch (ProcessingException e) {
             // The failure from this exception alone is not helpful. Use the
             // suppressed exception's message be the failure message for more
@@ -326,4 +394,268 @@ public class DataProviderServiceTest extends RestServerTest {
         }
     }
 
+    /**
+     * Test that the binary representation of the time graph states has the
+     * same rows and states as the JSON representation
+     *
+     * @throws InterruptedException
+     *             Exception thrown while waiting to execute again
+     * @throws IOException
+     *             Exception thrown while decoding the binary representation
+     */
+    @Test
+    public void testTimeGraphBinary() throws InterruptedException, IOException {
+        long start = 1450193697034689597L;
+        long end = 1450193745774189602L;
+        try {
+            WebTarget traces = getApplicationEndpoint().path(TRACES);
+            RestServerTest.assertPost(traces, CONTEXT_SWITCHES_UST_STUB);
+
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, ImmutableList.of(start, end));
+            List<Integer> items = getCompletedTimeGraphItems(CONTEXT_SWITCHES_UST_UUID.toString(), CALL_STACK_DATAPROVIDER_ID, parameters);
+            parameters.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, items);
+
+            WebTarget tgStatesEnpoint = getTimeGraphStatesEndpoint(CONTEXT_SWITCHES_UST_UUID.toString(), CALL_STACK_DATAPROVIDER_ID);
+            Response statesResponse = tgStatesEnpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the data provider", 200, statesResponse.getStatus());
+            TgStatesOutputResponseStub tgStateModelResponse = statesResponse.readEntity(TgStatesOutputResponseStub.class);
+            statesResponse.close();
+            assertNotNull(tgStateModelResponse);
+            assertTrue(tgStateModelResponse.isCompleted());
+            Map<Long, TimeGraphRowStub> expectedRows = new HashMap<>();
+            for (TimeGraphRowStub row : tgStateModelResponse.getModel().getRows()) {
+                expectedRows.put(row.getEntryId(), row);
+            }
+            assertFalse(expectedRows.isEmpty());
+
+            Response binaryStates = tgStatesEnpoint.request(MediaType.APPLICATION_OCTET_STREAM).post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the binary representation", 200, binaryStates.getStatus());
+            assertEquals(MediaType.APPLICATION_OCTET_STREAM_TYPE, binaryStates.getMediaType());
+            byte[] bytes = binaryStates.readEntity(byte[].class);
+            binaryStates.close();
+
+            // Decode the binary representation and compare it with the JSON one
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            List<String> dictionary = new ArrayList<>();
+            assertEquals("Binary format version", 2, in.readByte());
+            assertEquals("Time graph model type", 2, in.readByte());
+            assertEquals("COMPLETED", readBinaryString(in, dictionary));
+            readBinaryString(in, dictionary);
+            assertEquals(expectedRows.size(), readBinaryVarLong(in));
+            for (int i = 0; i < expectedRows.size(); i++) {
+                long entryId = in.readLong();
+                TimeGraphRowStub expected = expectedRows.get(entryId);
+                assertNotNull("Unexpected row " + entryId, expected);
+                List<TimeGraphStateStub> expectedStates = expected.getStates();
+                assertEquals(expectedStates.size(), readBinaryVarLong(in));
+                long previousEnd = 0;
+                for (TimeGraphStateStub expectedState : expectedStates) {
+                    long zigZag = readBinaryVarLong(in);
+                    long stateStart = previousEnd + ((zigZag >>> 1) ^ -(zigZag & 1));
+                    long stateEnd = stateStart + readBinaryVarLong(in);
+                    assertEquals(expectedState.getStartTime(), stateStart);
+                    assertEquals(expectedState.getEndTime(), stateEnd);
+                    zigZag = readBinaryVarLong(in);
+                    long value = (zigZag >>> 1) ^ -(zigZag & 1);
+                    assertEquals(expectedState.getTags(), readBinaryVarLong(in));
+                    assertEquals(expectedState.getLabel(), readBinaryNullableString(in, dictionary));
+                    OutputElementStyleStub expectedStyle = expectedState.getStyle();
+                    if (in.readByte() == 0) {
+                        // Without a style, the JSON representation has the value as style
+                        if (value == Integer.MIN_VALUE) {
+                            assertNull(expectedStyle);
+                        } else {
+                            assertNotNull(expectedStyle);
+                            assertEquals(String.valueOf(value), expectedStyle.getParentKey());
+                        }
+                    } else {
+                        assertNotNull(expectedStyle);
+                        assertEquals(expectedStyle.getParentKey(), readBinaryNullableString(in, dictionary));
+                        Map<String, Object> expectedValues = expectedStyle.getStyleValues();
+                        int nbValues = (int) readBinaryVarLong(in);
+                        assertEquals(expectedValues.size(), nbValues);
+                        for (int j = 0; j < nbValues; j++) {
+                            Object expectedValue = expectedValues.get(readBinaryString(in, dictionary));
+                            if (in.readByte() == 0) {
+                                assertEquals(String.valueOf(expectedValue), readBinaryString(in, dictionary));
+                            } else {
+                                assertTrue(expectedValue instanceof Number);
+                                assertEquals(((Number) expectedValue).doubleValue(), in.readDouble(), 0.000001);
+                            }
+                        }
+                    }
+                    previousEnd = stateEnd;
+                }
+            }
+            assertEquals("The whole binary representation should be read", 0, in.available());
+
+        } catch (ProcessingException e) {
+            // The failure from this exception alone is not helpful. Use the
+            // suppressed exception's message be the failure message for more
+            // help debugging failed tests.
+            fail(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Test that the time graph states of many rows, which are streamed by
+     * chunks of rows, are well-formed JSON with the same rows as the
+     * responses that are not streamed
+     *
+     * @throws InterruptedException
+     *             Exception thrown while waiting to execute again
+     * @throws IOException
+     *             Exception thrown while parsing the streamed response
+     */
+    @Test
+    public void testTimeGraphStreamedStates() throws InterruptedException, IOException {
+        long start = 1450193697034689597L;
+        long end = 1450193745774189602L;
+        try {
+            WebTarget traces = getApplicationEndpoint().path(TRACES);
+            RestServerTest.assertPost(traces, CONTEXT_SWITCHES_UST_STUB);
+
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, ImmutableList.of(start, end));
+            List<Integer> items = getCompletedTimeGraphItems(CONTEXT_SWITCHES_UST_UUID.toString(), CALL_STACK_DATAPROVIDER_ID, parameters);
+            WebTarget tgStatesEnpoint = getTimeGraphStatesEndpoint(CONTEXT_SWITCHES_UST_UUID.toString(), CALL_STACK_DATAPROVIDER_ID);
+
+            // The expected rows, read by requests small enough not to be streamed
+            Map<Long, TimeGraphRowStub> expectedRows = new HashMap<>();
+            for (List<Integer> chunk : Lists.partition(items, 100)) {
+                parameters.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, chunk);
+                Response statesResponse = tgStatesEnpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+                assertEquals("There should be a positive response for the data provider", 200, statesResponse.getStatus());
+                TgStatesOutputResponseStub chunkResponse = statesResponse.readEntity(TgStatesOutputResponseStub.class);
+                statesResponse.close();
+                assertNotNull(chunkResponse);
+                assertTrue(chunkResponse.isCompleted());
+                for (TimeGraphRowStub row : chunkResponse.getModel().getRows()) {
+                    expectedRows.put(row.getEntryId(), row);
+                }
+            }
+            assertFalse(expectedRows.isEmpty());
+
+            // Spread the entries among items that do not exist, so that the
+            // request spans several chunks of rows, some with no rows at all
+            List<Integer> streamedItems = new ArrayList<>();
+            int unknownId = -1;
+            for (Integer item : items) {
+                streamedItems.add(item);
+                streamedItems.add(unknownId--);
+                streamedItems.add(unknownId--);
+            }
+            while (streamedItems.size() < 2000) {
+                streamedItems.add(unknownId--);
+            }
+            parameters.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, streamedItems);
+            Response streamedResponse = tgStatesEnpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the streamed states", 200, streamedResponse.getStatus());
+            String json = streamedResponse.readEntity(String.class);
+            streamedResponse.close();
+
+            // The streamed JSON is well-formed and has the fields of a response
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode root = mapper.readTree(json);
+            assertEquals("COMPLETED", root.get("status").asText());
+            assertNotNull(root.get("statusMessage"));
+            JsonNode rows = root.get("model").get("rows");
+            assertTrue(rows.isArray());
+            assertEquals(expectedRows.size(), rows.size());
+
+            TgStatesOutputResponseStub streamed = mapper.readValue(json, TgStatesOutputResponseStub.class);
+            assertEquals(expectedRows.size(), streamed.getModel().getRows().size());
+            for (TimeGraphRowStub row : streamed.getModel().getRows()) {
+                TimeGraphRowStub expected = expectedRows.get(row.getEntryId());
+                assertNotNull("Unexpected row " + row.getEntryId(), expected);
+                assertEquals(expected.getStates().size(), row.getStates().size());
+                for (int i = 0; i < expected.getStates().size(); i++) {
+                    TimeGraphStateStub expectedState = expected.getStates().get(i);
+                    TimeGraphStateStub state = row.getStates().get(i);
+                    assertEquals(expectedState.getStartTime(), state.getStartTime());
+                    assertEquals(expectedState.getEndTime(), state.getEndTime());
+                    assertEquals(expectedState.getLabel(), state.getLabel());
+                    assertEquals(expectedState.getTags(), state.getTags());
+                    OutputElementStyleStub expectedStyle = expectedState.getStyle();
+                    OutputElementStyleStub style = state.getStyle();
+                    assertEquals(expectedStyle == null, style == null);
+                    if (expectedStyle != null && style != null) {
+                        assertEquals(expectedStyle.getParentKey(), style.getParentKey());
+                        assertEquals(expectedStyle.getStyleValues(), style.getStyleValues());
+                    }
+                }
+            }
+
+        } catch (ProcessingException e) {
+            // The failure from this exception alone is not helpful. Use the
+            // suppressed exception's message be the failure message for more
+            // help debugging failed tests.
+            fail(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Get the IDs of the entries of a time graph data provider, once its
+     * analysis is completed, so that all the responses have the same values
+     */
+    private static List<Integer> getCompletedTimeGraphItems(String uuid, String dataProviderId, Map<String, Object> parameters) throws InterruptedException {
+        WebTarget tgTree = getTimeGraphTreeEndpoint(uuid, dataProviderId);
+        TgTreeOutputResponseStub responseModel = null;
+        int iteration = 0;
+        do {
+            if (responseModel != null) {
+                Thread.sleep(100);
+            }
+            Response treeResponse = tgTree.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the data provider", 200, treeResponse.getStatus());
+            responseModel = treeResponse.readEntity(TgTreeOutputResponseStub.class);
+            assertNotNull(responseModel);
+            treeResponse.close();
+            iteration++;
+        } while (!responseModel.isCompleted() && iteration < MAX_ITER);
+        assertTrue("The analysis did not complete: " + responseModel, responseModel.isCompleted());
+
+        TgEntryModelStub model = responseModel.getModel();
+        assertNotNull(model);
+        List<Integer> items = new ArrayList<>();
+        for (TimeGraphEntryStub entry : model.getEntries()) {
+            items.add(entry.getId());
+        }
+        assertFalse(items.isEmpty());
+        return items;
+    }
+
+    private static String readBinaryNullableString(DataInputStream in, List<String> dictionary) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        return readBinaryString(in, dictionary);
+    }
+
+    private static String readBinaryString(DataInputStream in, List<String> dictionary) throws IOException {
+        int index = (int) readBinaryVarLong(in);
+        if (index < dictionary.size()) {
+            return dictionary.get(index);
+        }
+        assertEquals("New strings are added at the end of the dictionary", dictionary.size(), index);
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        dictionary.add(value);
+        return value;
+    }
+
+    private static long readBinaryVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
 }
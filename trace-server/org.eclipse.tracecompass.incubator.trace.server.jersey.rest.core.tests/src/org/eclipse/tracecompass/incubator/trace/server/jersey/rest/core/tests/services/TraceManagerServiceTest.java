@@ -16,6 +16,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Map;
 
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
@@ -58,6 +59,26 @@ public class TraceManagerServiceTest extends RestServerTest {
         assertEquals("Trace should have been deleted", Collections.emptySet(), getTraces(traces));
     }
 
+    /**
+     * Test the indexing status endpoint of the {@link TraceManagerService}.
+     */
+    @Test
+    public void testStatus() {
+        WebTarget traces = getApplicationEndpoint().path(TRACES);
+
+        Response response = traces.path(CONTEXT_SWITCHES_KERNEL_UUID.toString()).path("status").request().get();
+        assertEquals("Status of an unknown trace should not be found", 404, response.getStatus());
+
+        assertPost(traces, CONTEXT_SWITCHES_KERNEL_STUB);
+
+        response = traces.path(CONTEXT_SWITCHES_KERNEL_UUID.toString()).path("status").request().get();
+        assertEquals("Failed to GET the trace status", 200, response.getStatus());
+        Map<?, ?> status = response.readEntity(Map.class);
+        assertTrue(status.containsKey("status"));
+        assertTrue(status.containsKey("nbEvents"));
+        assertTrue(status.containsKey("end"));
+    }
+
     /**
      * Test the server with two traces, to eliminate the server trace manager bug
      */
@@ -89,10 +89,11 @@ public class TimeGraphStateStub implements Serializable {
     /**
      * Get the tags of this state
      *
-     * @return The tags of the state
+     * @return The tags of the state, 0 if the state has no tags
      */
     public int getTags() {
-        return fTags;
+        Integer tags = fTags;
+        return tags == null ? 0 : tags;
     }
 
     /**
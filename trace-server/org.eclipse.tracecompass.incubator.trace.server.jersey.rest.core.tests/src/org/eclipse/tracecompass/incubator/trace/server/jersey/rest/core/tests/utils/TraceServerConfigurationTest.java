@@ -28,6 +28,11 @@ public class TraceServerConfigurationTest {
     private static final String PROPERTY_USESSL = "traceserver.useSSL"; //$NON-NLS-1$
     private static final String PROPERTY_KEYSTORE = "traceserver.keystore"; //$NON-NLS-1$
     private static final String PROPERTY_KEYSTORE_PASS = "traceserver.keystorepass"; //$NON-NLS-1$
+    private static final String PROPERTY_GZIP = "traceserver.gzip"; //$NON-NLS-1$
+    private static final String PROPERTY_MIN_THREADS = "traceserver.minThreads"; //$NON-NLS-1$
+    private static final String PROPERTY_MAX_THREADS = "traceserver.maxThreads"; //$NON-NLS-1$
+    private static final String PROPERTY_QUEUE_CAPACITY = "traceserver.queueCapacity"; //$NON-NLS-1$
+    private static final String PROPERTY_IDLE_TIMEOUT = "traceserver.idleTimeout"; //$NON-NLS-1$
 
     /**
      * Reset all properties at the end of the test
@@ -38,6 +43,11 @@ public class TraceServerConfigurationTest {
         System.setProperty(PROPERTY_USESSL, "");
         System.setProperty(PROPERTY_KEYSTORE, "");
         System.setProperty(PROPERTY_KEYSTORE_PASS, "");
+        System.setProperty(PROPERTY_GZIP, "");
+        System.setProperty(PROPERTY_MIN_THREADS, "");
+        System.setProperty(PROPERTY_MAX_THREADS, "");
+        System.setProperty(PROPERTY_QUEUE_CAPACITY, "");
+        System.setProperty(PROPERTY_IDLE_TIMEOUT, "");
     }
 
     /**
@@ -49,6 +59,11 @@ public class TraceServerConfigurationTest {
         System.setProperty(PROPERTY_USESSL, "");
         System.setProperty(PROPERTY_KEYSTORE, "");
         System.setProperty(PROPERTY_KEYSTORE_PASS, "");
+        System.setProperty(PROPERTY_GZIP, "");
+        System.setProperty(PROPERTY_MIN_THREADS, "");
+        System.setProperty(PROPERTY_MAX_THREADS, "");
+        System.setProperty(PROPERTY_QUEUE_CAPACITY, "");
+        System.setProperty(PROPERTY_IDLE_TIMEOUT, "");
     }
 
     /**
@@ -127,11 +142,53 @@ public class TraceServerConfigurationTest {
         assertConfiguration(new TraceServerConfiguration(8080, false, null, null), TraceServerConfiguration.create());
     }
 
+    /**
+     * Test the compression and thread pool configuration
+     */
+    @Test
+    public void testThreadPool() {
+        System.setProperty(PROPERTY_GZIP, String.valueOf(false));
+        System.setProperty(PROPERTY_MIN_THREADS, "4");
+        System.setProperty(PROPERTY_MAX_THREADS, "16");
+        System.setProperty(PROPERTY_QUEUE_CAPACITY, "100");
+        System.setProperty(PROPERTY_IDLE_TIMEOUT, "30000");
+        assertConfiguration(new TraceServerConfiguration(8080, false, null, null, false, 4, 16, 100, 30000), TraceServerConfiguration.create());
+
+        // A minimum greater than the maximum is clamped to the maximum
+        System.setProperty(PROPERTY_MIN_THREADS, "32");
+        assertConfiguration(new TraceServerConfiguration(8080, false, null, null, false, 16, 16, 100, 30000), TraceServerConfiguration.create());
+
+        // The maximum must leave a thread for the requests after the connector's threads
+        int requiredThreads = TraceServerConfiguration.getAcceptors() + TraceServerConfiguration.getSelectors() + 1;
+        System.setProperty(PROPERTY_MIN_THREADS, "1");
+        System.setProperty(PROPERTY_MAX_THREADS, "1");
+        assertConfiguration(new TraceServerConfiguration(8080, false, null, null, false, 1, requiredThreads, 100, 30000), TraceServerConfiguration.create());
+
+        // Invalid thread pool sizes use the default values
+        System.setProperty(PROPERTY_MIN_THREADS, "0");
+        System.setProperty(PROPERTY_MAX_THREADS, "-1");
+        assertConfiguration(new TraceServerConfiguration(8080, false, null, null, false,
+                TraceServerConfiguration.DEFAULT_MIN_THREADS, TraceServerConfiguration.DEFAULT_MAX_THREADS, 100, 30000), TraceServerConfiguration.create());
+
+        // Invalid numbers use the default values
+        System.setProperty(PROPERTY_GZIP, String.valueOf(true));
+        System.setProperty(PROPERTY_MIN_THREADS, "not a number");
+        System.setProperty(PROPERTY_MAX_THREADS, "not a number");
+        System.setProperty(PROPERTY_QUEUE_CAPACITY, "not a number");
+        System.setProperty(PROPERTY_IDLE_TIMEOUT, "not a number");
+        assertConfiguration(new TraceServerConfiguration(8080, false, null, null), TraceServerConfiguration.create());
+    }
+
     private static void assertConfiguration(TraceServerConfiguration expected, TraceServerConfiguration actual) {
         assertEquals(expected.getPort(), actual.getPort());
         assertEquals(expected.getKeystore(), actual.getKeystore());
         assertEquals(expected.getKeystorePass(), actual.getKeystorePass());
         assertEquals(expected.useSSL(), actual.useSSL());
+        assertEquals(expected.useGzip(), actual.useGzip());
+        assertEquals(expected.getMinThreads(), actual.getMinThreads());
+        assertEquals(expected.getMaxThreads(), actual.getMaxThreads());
+        assertEquals(expected.getQueueCapacity(), actual.getQueueCapacity());
+        assertEquals(expected.getIdleTimeout(), actual.getIdleTimeout());
 
     }
 
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views;
+
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * Snapshot of the indexing progress of a trace or experiment, for clients to
+ * poll while the trace is being indexed in the background.
+ */
+public class IndexingStatus {
+
+    private static final String RUNNING = "RUNNING"; //$NON-NLS-1$
+    private static final String COMPLETED = "COMPLETED"; //$NON-NLS-1$
+
+    private final String fStatus;
+    private final long fNbEvents;
+    private final long fStart;
+    private final long fEnd;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace or experiment to take the indexing snapshot of
+     */
+    public IndexingStatus(ITmfTrace trace) {
+        // Read the status first so that a completed status has final counts
+        fStatus = trace.isIndexing() ? RUNNING : COMPLETED;
+        fNbEvents = trace.getNbEvents();
+        fStart = trace.getStartTime().toNanos();
+        fEnd = trace.getEndTime().toNanos();
+    }
+
+    /**
+     * Get the indexing status, either RUNNING or COMPLETED
+     *
+     * @return The indexing status
+     */
+    public String getStatus() {
+        return fStatus;
+    }
+
+    /**
+     * Get the number of events indexed so far
+     *
+     * @return The number of indexed events
+     */
+    public long getNbEvents() {
+        return fNbEvents;
+    }
+
+    /**
+     * Get the start time of the trace
+     *
+     * @return The start time, in nanoseconds
+     */
+    public long getStart() {
+        return fStart;
+    }
+
+    /**
+     * Get the end time of the indexed part of the trace
+     *
+     * @return The current end time, in nanoseconds
+     */
+    public long getEnd() {
+        return fEnd;
+    }
+
+}
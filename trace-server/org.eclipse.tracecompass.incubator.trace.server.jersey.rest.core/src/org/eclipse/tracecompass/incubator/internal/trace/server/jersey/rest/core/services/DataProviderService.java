@@ -11,6 +11,9 @@
 
 package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -19,7 +22,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,8 +36,13 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.jdt.annotation.NonNull;
@@ -44,6 +55,7 @@ import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.TableColumnHeader;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.TreeModelWrapper;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.VirtualTableModelWrapper;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.BinaryModelWriter;
 import org.eclipse.tracecompass.internal.provisional.tmf.core.model.annotations.AnnotationCategoriesModel;
 import org.eclipse.tracecompass.internal.provisional.tmf.core.model.annotations.AnnotationModel;
 import org.eclipse.tracecompass.internal.provisional.tmf.core.model.annotations.IOutputAnnotationProvider;
@@ -71,18 +83,24 @@ import org.eclipse.tracecompass.tmf.core.model.filters.TimeQueryFilter;
 import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphArrow;
 import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphDataProvider;
 import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphEntryModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
 import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
 import org.eclipse.tracecompass.tmf.core.model.tree.ITmfTreeDataModel;
 import org.eclipse.tracecompass.tmf.core.model.tree.ITmfTreeDataProvider;
 import org.eclipse.tracecompass.tmf.core.model.tree.TmfTreeModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ISeriesModel;
 import org.eclipse.tracecompass.tmf.core.model.xy.ITmfTreeXYDataProvider;
 import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
 import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
 import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
+import com.google.common.io.BaseEncoding;
 
 /**
  * Service to query the {@link ITmfTreeDataProvider}s
@@ -97,6 +115,49 @@ public class DataProviderService {
     private static final String NO_SUCH_TRACE = "No Such Trace"; //$NON-NLS-1$
     private static final String MISSING_OUTPUTID = "Missing parameter outputId"; //$NON-NLS-1$
     private static final int DEFAULT_MAX_TABLE_LINE_SIZE = 100000;
+    /**
+     * Maximum number of table lines fetched from a data provider at once,
+     * requests for more lines are streamed to the client by chunks of this
+     * size
+     */
+    private static final int TABLE_LINES_CHUNK_SIZE = 1000;
+    /**
+     * Maximum number of time graph rows fetched from a data provider at once,
+     * requests for more rows are streamed to the client by chunks of this size
+     */
+    private static final int TIME_GRAPH_ROWS_CHUNK_SIZE = 500;
+    /**
+     * Maximum weight of the completed responses kept in the response cache, in
+     * number of points, states or entries of the models
+     */
+    private static final long RESPONSE_CACHE_WEIGHT = 2000000;
+    private static final String KEY_SEPARATOR = "/"; //$NON-NLS-1$
+    private static final Cache<String, TmfModelResponse<?>> RESPONSE_CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(RESPONSE_CACHE_WEIGHT)
+            .weigher((String key, TmfModelResponse<?> response) -> getWeight(response))
+            .build();
+    /**
+     * Generation of the XML files, incremented when they change. It starts
+     * from the server start time so that the entity tags change when the
+     * server is restarted.
+     */
+    private static final AtomicLong XML_GENERATION = new AtomicLong(System.currentTimeMillis());
+    /**
+     * Generation of the traces and experiments, by UUID, updated when they are
+     * closed so that a trace reopened with the same UUID gets new entity tags
+     */
+    private static final Map<UUID, Long> TRACE_GENERATIONS = new ConcurrentHashMap<>();
+    /**
+     * Parsed XML output elements, by file path, element type and ID, to avoid
+     * parsing the XML files for every request. The DOM is not thread-safe, even
+     * for reads, so these elements are never given to the data providers:
+     * they are only cloned while holding the lock of their document.
+     */
+    private static final Map<String, Element> XML_ELEMENTS = new ConcurrentHashMap<>();
+    /**
+     * XML data provider descriptors, by trace type
+     */
+    private static final Map<Class<?>, List<IDataProviderDescriptor>> XML_DESCRIPTORS = new ConcurrentHashMap<>();
     private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(DataProviderService.class);
 
     private final DataProviderManager manager = DataProviderManager.getInstance();
@@ -116,8 +177,7 @@ public class DataProviderService {
             return Response.status(Status.NOT_FOUND).build();
         }
         List<IDataProviderDescriptor> list = DataProviderManager.getInstance().getAvailableProviders(trace);
-        list.addAll(getXmlDataProviderDescriptors(trace, EnumSet.of(OutputType.TIME_GRAPH)));
-        list.addAll(getXmlDataProviderDescriptors(trace, EnumSet.of(OutputType.XY)));
+        list.addAll(getXmlDataProviderDescriptors(trace));
 
         return Response.ok(list).build();
     }
@@ -140,8 +200,7 @@ public class DataProviderService {
             return Response.status(Status.NOT_FOUND).build();
         }
         List<IDataProviderDescriptor> list = DataProviderManager.getInstance().getAvailableProviders(trace);
-        list.addAll(getXmlDataProviderDescriptors(trace, EnumSet.of(OutputType.TIME_GRAPH)));
-        list.addAll(getXmlDataProviderDescriptors(trace, EnumSet.of(OutputType.XY)));
+        list.addAll(getXmlDataProviderDescriptors(trace));
 
         Optional<IDataProviderDescriptor> provider = list.stream().filter(p -> p.getId().equals(outputId)).findFirst();
 
@@ -162,6 +221,8 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch an XY tree as described by
      *            {@link QueryParameters}
+     * @param request
+     *            The request, to evaluate its preconditions
      * @return an {@link GenericView} with the results
      */
     @POST
@@ -169,8 +230,9 @@ public class DataProviderService {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response getXYTree(@PathParam("uuid") UUID uuid,
-            @PathParam("outputId") String outputId, QueryParameters queryParameters) {
-        return getTree(uuid, outputId, queryParameters);
+            @PathParam("outputId") String outputId, QueryParameters queryParameters,
+            @Context Request request) {
+        return getTree(uuid, outputId, queryParameters, request);
     }
 
     /**
@@ -182,14 +244,20 @@ public class DataProviderService {
      *            Eclipse extension point ID for the data provider to query
      * @param queryParameters
      *            Parameters to fetch XY as described by {@link QueryParameters}
+     * @param headers
+     *            The request headers, to negotiate the response's
+     *            representation
+     * @param request
+     *            The request, to evaluate its preconditions
      * @return an {@link GenericView} with the results
      */
     @POST
     @Path("/XY/{outputId}/xy")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM })
     public Response getXY(@PathParam("uuid") UUID uuid,
-            @PathParam("outputId") String outputId, QueryParameters queryParameters) {
+            @PathParam("outputId") String outputId, QueryParameters queryParameters,
+            @Context HttpHeaders headers, @Context Request request) {
         if (outputId == null) {
             return Response.status(Status.PRECONDITION_FAILED).entity(MISSING_OUTPUTID).build();
         }
@@ -200,6 +268,12 @@ public class DataProviderService {
                 return Response.status(Status.NOT_FOUND).entity(NO_SUCH_TRACE).build();
             }
 
+            String key = getCacheKey(uuid, outputId, "xy", BinaryModelWriter.isBinaryRequested(headers), queryParameters.getParameters()); //$NON-NLS-1$
+            Response cached = getCachedResponse(key, request);
+            if (cached != null) {
+                return cached;
+            }
+
             ITmfTreeXYDataProvider<@NonNull ITmfTreeDataModel> provider = manager.getDataProvider(trace,
                     outputId, ITmfTreeXYDataProvider.class);
 
@@ -219,7 +293,7 @@ public class DataProviderService {
             }
 
             TmfModelResponse<@NonNull ITmfXyModel> response = provider.fetchXY(queryParameters.getParameters(), null);
-            return Response.ok(response).build();
+            return buildResponse(key, response);
         }
     }
 
@@ -260,6 +334,8 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch time graph tree as described by
      *            {@link QueryParameters}
+     * @param request
+     *            The request, to evaluate its preconditions
      * @return {@link GenericView} with the results
      */
     @POST
@@ -268,8 +344,9 @@ public class DataProviderService {
     @Produces(MediaType.APPLICATION_JSON)
     public Response getTimeGraphTree(@PathParam("uuid") UUID uuid,
             @PathParam("outputId") String outputId,
-            QueryParameters queryParameters) {
-        return getTree(uuid, outputId, queryParameters);
+            QueryParameters queryParameters,
+            @Context Request request) {
+        return getTree(uuid, outputId, queryParameters, request);
     }
 
     /**
@@ -282,15 +359,21 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch time graph states as described by
      *            {@link QueryParameters}
+     * @param headers
+     *            The request headers, to negotiate the response's
+     *            representation
+     * @param request
+     *            The request, to evaluate its preconditions
      * @return {@link GenericView} with the results
      */
     @POST
     @Path("/timeGraph/{outputId}/states")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM })
     public Response getStates(@PathParam("uuid") UUID uuid,
             @PathParam("outputId") String outputId,
-            QueryParameters queryParameters) {
+            QueryParameters queryParameters,
+            @Context HttpHeaders headers, @Context Request request) {
         if (outputId == null) {
             return Response.status(Status.PRECONDITION_FAILED).entity(MISSING_OUTPUTID).build();
         }
@@ -301,6 +384,13 @@ public class DataProviderService {
                 return Response.status(Status.NOT_FOUND).entity(NO_SUCH_TRACE).build();
             }
 
+            boolean binary = BinaryModelWriter.isBinaryRequested(headers);
+            String key = getCacheKey(uuid, outputId, "states", binary, queryParameters.getParameters()); //$NON-NLS-1$
+            Response cached = getCachedResponse(key, request);
+            if (cached != null) {
+                return cached;
+            }
+
             ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> provider = getTimeGraphProvider(trace, outputId);
 
             if (provider == null) {
@@ -313,8 +403,15 @@ public class DataProviderService {
                 return Response.status(Status.UNAUTHORIZED).entity(WRONG_PARAMETERS).build();
             }
 
-            TmfModelResponse<TimeGraphModel> response = provider.fetchRowModel(queryParameters.getParameters(), null);
-            return Response.ok(response).build();
+            Map<String, Object> parameters = queryParameters.getParameters();
+            List<Long> items = DataProviderParameterUtils.extractSelectedItems(parameters);
+            if (items != null && items.size() > TIME_GRAPH_ROWS_CHUNK_SIZE && !binary) {
+                // Stream the rows so that the whole model is never in memory
+                return Response.ok(new TimeGraphStatesStreamingOutput(provider, parameters, items, TIME_GRAPH_ROWS_CHUNK_SIZE)).build();
+            }
+
+            TmfModelResponse<TimeGraphModel> response = provider.fetchRowModel(parameters, null);
+            return buildResponse(key, response);
         }
     }
 
@@ -529,7 +626,7 @@ public class DataProviderService {
     public Response getColumns(@PathParam("uuid") UUID uuid,
             @PathParam("outputId") String outputId,
             QueryParameters queryParameters) {
-        Response response = getTree(uuid, outputId, queryParameters);
+        Response response = getTree(uuid, outputId, queryParameters, null);
         Object entity = response.getEntity();
         if (!(entity instanceof TmfModelResponse<?>)) {
             return response;
@@ -582,15 +679,27 @@ public class DataProviderService {
 
             // Map the incoming parameters to the expected parametere
             Map<String, Object> parameters = queryParameters.getParameters();
+            Object columnIds = parameters.containsKey("columnIds") ? parameters.get("columnIds") : Collections.emptyList(); //$NON-NLS-1$ //$NON-NLS-2$
+            Object lowIndexObj = parameters.get("lowIndex"); //$NON-NLS-1$
+            long lowIndex = lowIndexObj instanceof Number ? ((Number) lowIndexObj).longValue() : 0;
+            Object sizeObj = parameters.get("size"); //$NON-NLS-1$
+            int size = sizeObj instanceof Number ? ((Number) sizeObj).intValue() : DEFAULT_MAX_TABLE_LINE_SIZE;
+
             Map<String, Object> lineParameters = new HashMap<>();
-            lineParameters.put(DataProviderParameterUtils.REQUESTED_COLUMN_IDS_KEY, parameters.containsKey("columnIds") ? parameters.get("columnIds") : Collections.emptyList()); //$NON-NLS-1$ //$NON-NLS-2$
-            lineParameters.put(DataProviderParameterUtils.REQUESTED_TABLE_INDEX_KEY, parameters.containsKey("lowIndex") ? parameters.get("lowIndex") : 0); //$NON-NLS-1$ //$NON-NLS-2$
-            lineParameters.put(DataProviderParameterUtils.REQUESTED_TABLE_COUNT_KEY, parameters.containsKey("size") ? parameters.get("size") : DEFAULT_MAX_TABLE_LINE_SIZE); //$NON-NLS-1$ //$NON-NLS-2$
+            lineParameters.put(DataProviderParameterUtils.REQUESTED_COLUMN_IDS_KEY, columnIds);
+            lineParameters.put(DataProviderParameterUtils.REQUESTED_TABLE_INDEX_KEY, lowIndex);
+            lineParameters.put(DataProviderParameterUtils.REQUESTED_TABLE_COUNT_KEY, Math.min(size, TABLE_LINES_CHUNK_SIZE));
 
+            // Fetch the first lines before streaming, to report failures with the same status
             TmfModelResponse<?> response = provider.fetchLines(lineParameters, null);
             if (response.getStatus() == ITmfResponse.Status.FAILED) {
                 return Response.status(Status.UNAUTHORIZED).entity(response.getStatusMessage()).build();
             }
+
+            if (size > TABLE_LINES_CHUNK_SIZE) {
+                // Stream the lines to the client as they are read
+                return Response.ok(new TableLinesStreamingOutput(provider, lineParameters, lowIndex, size, TABLE_LINES_CHUNK_SIZE, response)).build();
+            }
             return Response.ok(new TmfModelResponse<>(new VirtualTableModelWrapper((ITmfVirtualTableModel) response.getModel()), response.getStatus(), response.getStatusMessage())).build();
         }
     }
@@ -612,7 +721,7 @@ public class DataProviderService {
         for (OutputType viewType : types) {
             for (XmlOutputElement element : Iterables.filter(XmlUtils.getXmlOutputElements().values(),
                     element -> element.getXmlElem().equals(viewType.getXmlElem()) && id.equals(element.getId()))) {
-                Element viewElement = TmfXmlUtils.getElementInFile(element.getPath(), viewType.getXmlElem(), id);
+                Element viewElement = getXmlElement(element.getPath(), viewType.getXmlElem(), id);
                 if (viewElement != null && viewType == OutputType.XY) {
                     return (P) XmlDataProviderManager.getInstance().getXyProvider(trace, viewElement);
                 } else if (viewElement != null && viewType == OutputType.TIME_GRAPH) {
@@ -623,6 +732,44 @@ public class DataProviderService {
         return null;
     }
 
+    private static @Nullable Element getXmlElement(String path, String elementType, String id) {
+        String key = path + KEY_SEPARATOR + elementType + KEY_SEPARATOR + id;
+        Element element = XML_ELEMENTS.get(key);
+        if (element == null) {
+            element = TmfXmlUtils.getElementInFile(path, elementType, id);
+            if (element == null) {
+                return null;
+            }
+            XML_ELEMENTS.put(key, element);
+        }
+        // Each caller gets its own copy of the element
+        Document document = element.getOwnerDocument();
+        synchronized (document) {
+            return (Element) element.cloneNode(true);
+        }
+    }
+
+    /**
+     * Clear the cached XML elements and descriptors, and the responses that may
+     * come from XML data providers, when XML files are added, updated or
+     * removed
+     */
+    static void invalidateXmlCache() {
+        XML_ELEMENTS.clear();
+        XML_DESCRIPTORS.clear();
+        XML_GENERATION.incrementAndGet();
+        RESPONSE_CACHE.invalidateAll();
+    }
+
+    private static @NonNull List<IDataProviderDescriptor> getXmlDataProviderDescriptors(@NonNull ITmfTrace trace) {
+        return XML_DESCRIPTORS.computeIfAbsent(trace.getClass(), c -> {
+            List<IDataProviderDescriptor> descriptors = new ArrayList<>();
+            descriptors.addAll(getXmlDataProviderDescriptors(trace, EnumSet.of(OutputType.TIME_GRAPH)));
+            descriptors.addAll(getXmlDataProviderDescriptors(trace, EnumSet.of(OutputType.XY)));
+            return Collections.unmodifiableList(descriptors);
+        });
+    }
+
     private static @NonNull List<IDataProviderDescriptor> getXmlDataProviderDescriptors(@NonNull ITmfTrace trace, EnumSet<OutputType> types) {
         /*
          *  TODO: find a better way to create the data provider descriptors.
@@ -656,7 +803,7 @@ public class DataProviderService {
         return descriptors;
     }
 
-    private Response getTree(UUID uuid, String outputId, QueryParameters queryParameters) {
+    private Response getTree(UUID uuid, String outputId, QueryParameters queryParameters, @Nullable Request request) {
         if (outputId == null) {
             return Response.status(Status.PRECONDITION_FAILED).entity(MISSING_OUTPUTID).build();
         }
@@ -667,6 +814,12 @@ public class DataProviderService {
                 return Response.status(Status.NOT_FOUND).entity(NO_SUCH_TRACE).build();
             }
 
+            String key = getCacheKey(uuid, outputId, "tree", false, queryParameters.getParameters()); //$NON-NLS-1$
+            Response cached = getCachedResponse(key, request);
+            if (cached != null) {
+                return cached;
+            }
+
             ITmfTreeDataProvider<? extends @NonNull ITmfTreeDataModel> provider = manager.getDataProvider(trace,
                     outputId, ITmfTreeDataProvider.class);
 
@@ -687,7 +840,98 @@ public class DataProviderService {
 
             TmfModelResponse<?> treeResponse = provider.fetchTree(queryParameters.getParameters(), null);
             Object model = treeResponse.getModel();
-            return Response.ok(model instanceof TmfTreeModel ? new TmfModelResponse<>(new TreeModelWrapper((TmfTreeModel<@NonNull ITmfTreeDataModel>) model), treeResponse.getStatus(), treeResponse.getStatusMessage()) : treeResponse).build();
+            return buildResponse(key, model instanceof TmfTreeModel ? new TmfModelResponse<>(new TreeModelWrapper((TmfTreeModel<@NonNull ITmfTreeDataModel>) model), treeResponse.getStatus(), treeResponse.getStatusMessage()) : treeResponse);
+        }
+    }
+
+    /**
+     * Remove the cached responses of the data providers of a trace or
+     * experiment when it is closed
+     *
+     * @param uuid
+     *            The {@link UUID} of the trace or experiment
+     */
+    static void invalidateResponses(UUID uuid) {
+        TRACE_GENERATIONS.put(uuid, XML_GENERATION.incrementAndGet());
+        String prefix = uuid.toString() + KEY_SEPARATOR;
+        RESPONSE_CACHE.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Get the key of a response in the cache. The parameters are sorted by
+     * name so that the same query always has the same key. The key also
+     * contains the generations of the trace and of the XML files, so that the
+     * key, and the entity tag computed from it, change when the content they
+     * describe may have changed.
+     */
+    private static String getCacheKey(UUID uuid, String outputId, String endpoint, boolean binary, Map<String, Object> parameters) {
+        long traceGeneration = TRACE_GENERATIONS.getOrDefault(uuid, 0L);
+        return uuid.toString() + KEY_SEPARATOR + traceGeneration + KEY_SEPARATOR + XML_GENERATION.get() + KEY_SEPARATOR
+                + outputId + KEY_SEPARATOR + endpoint + KEY_SEPARATOR + binary + KEY_SEPARATOR + new TreeMap<>(parameters);
+    }
+
+    /**
+     * Get the weight of a response in the cache, the number of points, states
+     * or entries of its model
+     */
+    private static int getWeight(TmfModelResponse<?> response) {
+        Object model = response.getModel();
+        long weight = 1;
+        if (model instanceof ITmfXyModel) {
+            for (ISeriesModel series : ((ITmfXyModel) model).getSeriesData()) {
+                weight += series.getXAxis().length;
+            }
+        } else if (model instanceof TimeGraphModel) {
+            for (ITimeGraphRowModel row : ((TimeGraphModel) model).getRows()) {
+                weight += 1 + row.getStates().size();
+            }
+        } else if (model instanceof TreeModelWrapper) {
+            weight += ((TreeModelWrapper) model).getEntries().size();
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the response to a query from the cache, or a "not modified" response
+     * if the client already has the response for the entity tag
+     *
+     * @return The cached response, or <code>null</code> if the query was not
+     *         cached
+     */
+    private static @Nullable Response getCachedResponse(String key, @Nullable Request request) {
+        TmfModelResponse<?> cached = RESPONSE_CACHE.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        EntityTag tag = getEntityTag(key);
+        if (request != null) {
+            ResponseBuilder notModified = request.evaluatePreconditions(tag);
+            if (notModified != null) {
+                return notModified.tag(tag).build();
+            }
+        }
+        return Response.ok(cached).tag(tag).build();
+    }
+
+    /**
+     * Build the response to a query and cache it if it is completed, as a
+     * completed response for a given query cannot change
+     */
+    private static Response buildResponse(String key, TmfModelResponse<?> response) {
+        if (response.getStatus() != ITmfResponse.Status.COMPLETED) {
+            return Response.ok(response).build();
+        }
+        RESPONSE_CACHE.put(key, response);
+        return Response.ok(response).tag(getEntityTag(key)).build();
+    }
+
+    private static EntityTag getEntityTag(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            return new EntityTag(BaseEncoding.base16().lowerCase().encode(digest.digest(key.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-1
+            return new EntityTag(Integer.toHexString(key.hashCode()));
         }
     }
 
@@ -29,6 +29,7 @@ import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.IndexingStatus;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.QueryParameters;
 import org.eclipse.tracecompass.tmf.core.component.ITmfEventProvider;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
@@ -85,6 +86,25 @@ public class ExperimentManagerService {
         return Response.status(Status.NOT_FOUND).build();
     }
 
+    /**
+     * Getter for the indexing progress of an experiment
+     *
+     * @param uuid
+     *            UUID of the experiment to get the status for
+     *
+     * @return The {@link IndexingStatus} of the experiment if it exists.
+     */
+    @GET
+    @Path("/{uuid}/status")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response getStatus(@PathParam("uuid") UUID uuid) {
+        ITmfTrace experiment = TraceManagerService.getTraceByUUID(uuid);
+        if (experiment instanceof TmfExperiment) {
+            return Response.ok(new IndexingStatus(experiment)).build();
+        }
+        return Response.status(Status.NOT_FOUND).build();
+    }
+
     /**
      * Get the outputs for an experiment
      *
@@ -114,6 +134,7 @@ public class ExperimentManagerService {
     public Response deleteExperiment(@PathParam("uuid") UUID uuid) {
         ITmfTrace experiment = TraceManagerService.getTraceByUUID(uuid);
         if (experiment instanceof TmfExperiment) {
+            TraceManagerService.unregisterTrace(uuid);
             TmfSignalManager.dispatchSignal(new TmfTraceClosedSignal(this, experiment));
             experiment.dispose();
             TmfTraceManager.deleteSupplementaryFolder(experiment);
@@ -211,6 +232,7 @@ public class ExperimentManagerService {
         }
 
         TmfExperiment experiment = new TmfExperiment(ITmfEvent.class, ipath.toOSString(), array, TmfExperiment.DEFAULT_INDEX_PAGE_SIZE, null);
+        // Do not wait for the indexing to complete, clients poll the status
         experiment.indexTrace(false);
         // read first event to make sure start time is initialized
         ITmfContext ctx = experiment.seekEvent(0);
@@ -218,6 +240,7 @@ public class ExperimentManagerService {
         ctx.dispose();
 
         TmfSignalManager.dispatchSignal(new TmfTraceOpenedSignal(this, experiment, null));
+        TraceManagerService.registerTrace(experiment);
         return Response.ok(experiment).build();
     }
 
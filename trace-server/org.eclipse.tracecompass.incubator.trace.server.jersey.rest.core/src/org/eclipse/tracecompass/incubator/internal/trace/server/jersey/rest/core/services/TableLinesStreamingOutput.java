@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.VirtualTableModelWrapper;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.WebApplication;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.ITmfVirtualTableDataProvider;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.ITmfVirtualTableModel;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.IVirtualTableLine;
+import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.model.tree.ITmfTreeDataModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * {@link StreamingOutput} for a large number of virtual table lines. The lines
+ * are fetched from the data provider by chunks and each chunk is written to
+ * the output stream before the next one is fetched, so that the client
+ * receives the first lines early and the server never holds all the lines.
+ *
+ * The JSON written has the same form as a serialized {@link TmfModelResponse}
+ * of {@link VirtualTableModelWrapper}.
+ */
+@SuppressWarnings("restriction")
+final class TableLinesStreamingOutput implements StreamingOutput {
+
+    private final ITmfVirtualTableDataProvider<? extends IVirtualTableLine, ? extends ITmfTreeDataModel> fProvider;
+    private final Map<String, Object> fParameters;
+    private final long fLowIndex;
+    private final long fCount;
+    private final int fChunkSize;
+    private @Nullable TmfModelResponse<?> fFirstResponse;
+
+    /**
+     * Constructor
+     *
+     * @param provider
+     *            The data provider to fetch the lines from
+     * @param parameters
+     *            The parameters of the lines query, the index and count will
+     *            be replaced for each chunk
+     * @param lowIndex
+     *            The index of the first line
+     * @param count
+     *            The number of lines requested
+     * @param chunkSize
+     *            The maximum number of lines to fetch at a time
+     * @param firstResponse
+     *            The response for the first chunk of lines, already fetched
+     *            to report failures before streaming
+     */
+    public TableLinesStreamingOutput(ITmfVirtualTableDataProvider<? extends IVirtualTableLine, ? extends ITmfTreeDataModel> provider,
+            Map<String, Object> parameters, long lowIndex, long count, int chunkSize, TmfModelResponse<?> firstResponse) {
+        fProvider = provider;
+        fParameters = parameters;
+        fLowIndex = lowIndex;
+        fCount = count;
+        fChunkSize = chunkSize;
+        fFirstResponse = firstResponse;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        ITmfResponse.Status status = ITmfResponse.Status.COMPLETED;
+        String statusMessage = CommonStatusMessage.COMPLETED;
+        long index = fLowIndex;
+        long remaining = fCount;
+        boolean modelStarted = false;
+        try (JsonGenerator gen = WebApplication.getObjectMapper().getFactory().createGenerator(output)) {
+            gen.writeStartObject();
+            while (remaining > 0) {
+                int count = (int) Math.min(remaining, fChunkSize);
+                Map<String, Object> parameters = new HashMap<>(fParameters);
+                parameters.put(DataProviderParameterUtils.REQUESTED_TABLE_INDEX_KEY, index);
+                parameters.put(DataProviderParameterUtils.REQUESTED_TABLE_COUNT_KEY, count);
+                TmfModelResponse<?> response = fFirstResponse;
+                fFirstResponse = null;
+                if (response == null) {
+                    response = fProvider.fetchLines(parameters, null);
+                }
+                if (response.getStatus() != ITmfResponse.Status.COMPLETED) {
+                    status = response.getStatus();
+                    statusMessage = response.getStatusMessage();
+                }
+                Object model = response.getModel();
+                if (!(model instanceof ITmfVirtualTableModel)) {
+                    break;
+                }
+                ITmfVirtualTableModel<?> tableModel = (ITmfVirtualTableModel<?>) model;
+                if (!modelStarted) {
+                    // The header of the model is known with the first chunk
+                    gen.writeObjectFieldStart("model"); //$NON-NLS-1$
+                    gen.writeNumberField("lowIndex", fLowIndex); //$NON-NLS-1$
+                    gen.writeNumberField("size", tableModel.getSize()); //$NON-NLS-1$
+                    gen.writeObjectField("columnIds", tableModel.getColumnIds()); //$NON-NLS-1$
+                    gen.writeArrayFieldStart("lines"); //$NON-NLS-1$
+                    modelStarted = true;
+                }
+                List<?> lines = tableModel.getLines();
+                for (Object line : lines) {
+                    gen.writeObject(line);
+                }
+                gen.flush();
+                index += lines.size();
+                remaining -= lines.size();
+                if (lines.size() < count || status != ITmfResponse.Status.COMPLETED) {
+                    // End of the table, or the provider cannot give more lines
+                    break;
+                }
+            }
+            if (modelStarted) {
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            gen.writeStringField("status", status.name()); //$NON-NLS-1$
+            gen.writeStringField("statusMessage", statusMessage); //$NON-NLS-1$
+            gen.writeEndObject();
+        }
+    }
+
+}
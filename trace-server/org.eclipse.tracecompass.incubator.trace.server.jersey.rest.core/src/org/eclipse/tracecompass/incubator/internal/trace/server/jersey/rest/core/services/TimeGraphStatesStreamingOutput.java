@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.WebApplication;
+import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphDataProvider;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphEntryModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.Lists;
+
+/**
+ * {@link StreamingOutput} for the time graph states of many rows. The requested
+ * items are fetched from the data provider by chunks and each chunk of rows is
+ * written to the output stream before the next one is fetched, so that the
+ * complete model and the complete JSON string are never held in memory at
+ * once.
+ *
+ * The JSON written has the same form as a serialized
+ * {@link TmfModelResponse} of {@link TimeGraphModel}.
+ */
+final class TimeGraphStatesStreamingOutput implements StreamingOutput {
+
+    private final ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> fProvider;
+    private final Map<String, Object> fParameters;
+    private final List<Long> fItems;
+    private final int fChunkSize;
+
+    /**
+     * Constructor
+     *
+     * @param provider
+     *            The data provider to fetch the rows from
+     * @param parameters
+     *            The query parameters, the requested items will be replaced
+     *            for each chunk
+     * @param items
+     *            The requested items
+     * @param chunkSize
+     *            The maximum number of items to fetch at a time
+     */
+    public TimeGraphStatesStreamingOutput(ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> provider, Map<String, Object> parameters, List<Long> items, int chunkSize) {
+        fProvider = provider;
+        fParameters = parameters;
+        fItems = items;
+        fChunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        ITmfResponse.Status status = ITmfResponse.Status.COMPLETED;
+        String statusMessage = CommonStatusMessage.COMPLETED;
+        try (JsonGenerator gen = WebApplication.getObjectMapper().getFactory().createGenerator(output)) {
+            gen.writeStartObject();
+            gen.writeObjectFieldStart("model"); //$NON-NLS-1$
+            gen.writeArrayFieldStart("rows"); //$NON-NLS-1$
+            for (List<Long> chunk : Lists.partition(fItems, fChunkSize)) {
+                Map<String, Object> parameters = new HashMap<>(fParameters);
+                parameters.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, chunk);
+                TmfModelResponse<TimeGraphModel> response = fProvider.fetchRowModel(parameters, null);
+                TimeGraphModel model = response.getModel();
+                if (model != null) {
+                    for (ITimeGraphRowModel row : model.getRows()) {
+                        gen.writeObject(row);
+                    }
+                }
+                // Send this chunk to the client before fetching the next one
+                gen.flush();
+                if (getPriority(response.getStatus()) > getPriority(status)) {
+                    status = response.getStatus();
+                    statusMessage = response.getStatusMessage();
+                }
+                if (status == ITmfResponse.Status.FAILED || status == ITmfResponse.Status.CANCELLED) {
+                    break;
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.writeStringField("status", status.name()); //$NON-NLS-1$
+            gen.writeStringField("statusMessage", statusMessage); //$NON-NLS-1$
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Get the priority of a status when aggregating the statuses of the
+     * chunks, the status of the response is the one with the highest priority
+     */
+    private static int getPriority(ITmfResponse.Status status) {
+        switch (status) {
+        case FAILED:
+            return 3;
+        case CANCELLED:
+            return 2;
+        case RUNNING:
+            return 1;
+        case COMPLETED:
+        default:
+            return 0;
+        }
+    }
+
+}
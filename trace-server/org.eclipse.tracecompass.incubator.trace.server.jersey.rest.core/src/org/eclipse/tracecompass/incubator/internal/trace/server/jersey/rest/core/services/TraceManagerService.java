@@ -17,6 +17,7 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
@@ -42,6 +43,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.Activator;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.IndexingStatus;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.QueryParameters;
 import org.eclipse.tracecompass.tmf.core.TmfCommonConstants;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
@@ -71,6 +73,12 @@ import com.google.common.collect.Iterables;
 @Path("/traces")
 public class TraceManagerService {
 
+    /**
+     * Traces and experiments opened by the server, indexed by {@link UUID} so
+     * that request dispatch does not depend on the number of opened traces
+     */
+    private static final Map<UUID, ITmfTrace> TRACES = new ConcurrentHashMap<>();
+
     /**
      * Getter method to access the list of traces
      *
@@ -84,8 +92,9 @@ public class TraceManagerService {
     }
 
     /**
-     * Method to open the trace, initialize it, index it and add it to the trace
-     * manager.
+     * Method to open the trace, initialize it and add it to the trace manager.
+     * The trace is indexed in the background, its progress can be followed
+     * with {@link #getStatus(UUID)}.
      *
      * @param queryParameters
      *            Parameters to post a trace as described by
@@ -139,6 +148,7 @@ public class TraceManagerService {
 
         ITmfTrace trace = helper.getTraceClass().getDeclaredConstructor().newInstance();
         trace.initTrace(resource, path, ITmfEvent.class, name, typeID);
+        // Do not wait for the indexing to complete, clients poll the status
         trace.indexTrace(false);
         // read first event to make sure start time is initialized
         ITmfContext ctx = trace.seekEvent(0);
@@ -146,6 +156,7 @@ public class TraceManagerService {
         ctx.dispose();
 
         TmfSignalManager.dispatchSignal(new TmfTraceOpenedSignal(this, trace, null));
+        registerTrace(trace);
         return trace;
     }
 
@@ -212,6 +223,24 @@ public class TraceManagerService {
         return Response.ok(trace).build();
     }
 
+    /**
+     * Getter method to follow the indexing progress of a trace
+     *
+     * @param uuid
+     *            Unique trace ID
+     * @return a response containing the {@link IndexingStatus} of the trace
+     */
+    @GET
+    @Path("/{uuid}/status")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response getStatus(@PathParam("uuid") @NotNull UUID uuid) {
+        ITmfTrace trace = getTraceByUUID(uuid);
+        if (trace == null || trace instanceof TmfExperiment) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.ok(new IndexingStatus(trace)).build();
+    }
+
     /**
      * Delete a trace from the manager and dispose of it
      *
@@ -227,6 +256,7 @@ public class TraceManagerService {
         if (trace == null || trace instanceof TmfExperiment) {
             return Response.status(Status.NOT_FOUND).build();
         }
+        unregisterTrace(uuid);
         TmfSignalManager.dispatchSignal(new TmfTraceClosedSignal(this, trace));
         trace.dispose();
         TmfTraceManager.deleteSupplementaryFolder(trace);
@@ -245,14 +275,40 @@ public class TraceManagerService {
     }
 
     /**
-     * Try and find a trace with the queried UUID in the {@link TmfTraceManager}.
+     * Try and find a trace or experiment opened by the server with the queried
+     * UUID.
      *
      * @param uuid
      *            queried {@link UUID}
      * @return the trace or null if none match.
      */
     public static @Nullable ITmfTrace getTraceByUUID(UUID uuid) {
-        return Iterables.tryFind(TmfTraceManager.getInstance().getOpenedTraces(), t -> uuid.equals(t.getUUID())).orNull();
+        return TRACES.get(uuid);
+    }
+
+    /**
+     * Register a trace or experiment opened by the server, so that it can be
+     * found by {@link #getTraceByUUID(UUID)}
+     *
+     * @param trace
+     *            the opened trace or experiment
+     */
+    static void registerTrace(ITmfTrace trace) {
+        UUID uuid = trace.getUUID();
+        if (uuid != null) {
+            TRACES.put(uuid, trace);
+        }
+    }
+
+    /**
+     * Unregister a trace or experiment that is being closed by the server
+     *
+     * @param uuid
+     *            the {@link UUID} of the trace or experiment
+     */
+    static void unregisterTrace(UUID uuid) {
+        TRACES.remove(uuid);
+        DataProviderService.invalidateResponses(uuid);
     }
 
     private static void createFolder(IFolder folder, IProgressMonitor monitor) throws CoreException {
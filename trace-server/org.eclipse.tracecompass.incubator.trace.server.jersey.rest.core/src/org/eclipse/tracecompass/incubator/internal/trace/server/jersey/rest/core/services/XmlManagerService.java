@@ -92,6 +92,7 @@ public class XmlManagerService {
         }
         XmlUtils.deleteFiles(ImmutableList.of(Objects.requireNonNull(name)));
         XmlUtils.saveFilesStatus();
+        DataProviderService.invalidateXmlCache();
         return Response.ok().build();
     }
 
@@ -108,6 +109,7 @@ public class XmlManagerService {
             if (status.isOK()) {
                 XmlAnalysisModuleSource.notifyModuleChange();
                 XmlUtils.saveFilesStatus();
+                DataProviderService.invalidateXmlCache();
                 return Response.ok().build();
             }
         }
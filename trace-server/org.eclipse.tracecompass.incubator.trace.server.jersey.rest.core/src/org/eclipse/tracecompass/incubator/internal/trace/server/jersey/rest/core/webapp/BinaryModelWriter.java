@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.model.OutputElementStyle;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ISeriesModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+
+/**
+ * Compact binary representation of the XY and time graph responses, used when
+ * the client accepts {@link MediaType#APPLICATION_OCTET_STREAM} rather than
+ * JSON. All numbers are big-endian. Variable length integers (varint) are
+ * unsigned LEB128, signed values are zigzag encoded first. Strings are written
+ * as a varint index in a dictionary built along the response: when the index
+ * is equal to the current dictionary size, the string follows as an int
+ * byte length and its UTF-8 bytes, and is added to the dictionary. A string
+ * that may be null, like the label of a state or the parent key of a style, is
+ * a nullable string: a byte flag, 0 if the string is null and nothing follows,
+ * or 1 followed by the string.
+ *
+ * <pre>
+ * response:   byte version, byte modelType, string status, string statusMessage, model
+ * xy model:   string title, varint nbSeries, series*
+ * series:     long id, string name, varint nbPoints,
+ *             zigzag varint x deltas (first one from 0), double y values
+ * time graph: varint nbRows, row*
+ * row:        long entryId, varint nbStates, state*
+ * state:      zigzag varint start delta (from the previous state's end),
+ *             varint duration, zigzag varint value, varint tags,
+ *             nullable string label, style
+ * style:      byte 0 (no style) or 1, nullable string parentKey, varint nbValues,
+ *             (string key, byte 0 + string value or byte 1 + double value)*
+ * nullable string: byte 0 (null) or 1, string
+ * </pre>
+ */
+@Provider
+@Produces(MediaType.APPLICATION_OCTET_STREAM)
+public class BinaryModelWriter implements MessageBodyWriter<TmfModelResponse<?>> {
+
+    /** Version of the binary format */
+    private static final byte VERSION = 2;
+    private static final byte NO_MODEL = 0;
+    private static final byte XY_MODEL = 1;
+    private static final byte TIME_GRAPH_MODEL = 2;
+
+    /**
+     * Get whether the client of a request prefers the binary representation
+     * over JSON.
+     *
+     * @param headers
+     *            The headers of the request
+     * @return <code>true</code> if the response will be written by this writer
+     */
+    public static boolean isBinaryRequested(@Nullable HttpHeaders headers) {
+        if (headers == null) {
+            return false;
+        }
+        List<MediaType> types = headers.getAcceptableMediaTypes();
+        if (types.isEmpty()) {
+            return false;
+        }
+        MediaType preferred = types.get(0);
+        return !preferred.isWildcardType() && preferred.isCompatible(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    }
+
+    @Override
+    public boolean isWriteable(@Nullable Class<?> type, @Nullable Type genericType, Annotation @Nullable [] annotations, @Nullable MediaType mediaType) {
+        return type != null && TmfModelResponse.class.isAssignableFrom(type)
+                && mediaType != null && MediaType.APPLICATION_OCTET_STREAM_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(TmfModelResponse<?> response, @Nullable Class<?> type, @Nullable Type genericType, Annotation @Nullable [] annotations, @Nullable MediaType mediaType) {
+        // Deprecated in JAX-RS 2.0, size is unknown
+        return -1;
+    }
+
+    @Override
+    public void writeTo(TmfModelResponse<?> response, @Nullable Class<?> type, @Nullable Type genericType, Annotation @Nullable [] annotations, @Nullable MediaType mediaType,
+            @Nullable MultivaluedMap<String, Object> httpHeaders, @Nullable OutputStream entityStream) throws IOException {
+        if (entityStream == null) {
+            return;
+        }
+        // Do not close the stream, it belongs to the container
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(entityStream));
+        Map<String, Integer> dictionary = new HashMap<>();
+        Object model = response.getModel();
+        out.writeByte(VERSION);
+        if (model instanceof ITmfXyModel) {
+            out.writeByte(XY_MODEL);
+        } else if (model instanceof TimeGraphModel) {
+            out.writeByte(TIME_GRAPH_MODEL);
+        } else {
+            out.writeByte(NO_MODEL);
+        }
+        writeString(out, dictionary, response.getStatus().name());
+        writeString(out, dictionary, response.getStatusMessage());
+        if (model instanceof ITmfXyModel) {
+            writeXyModel(out, dictionary, (ITmfXyModel) model);
+        } else if (model instanceof TimeGraphModel) {
+            writeTimeGraphModel(out, dictionary, (TimeGraphModel) model);
+        }
+        out.flush();
+    }
+
+    private static void writeXyModel(DataOutputStream out, Map<String, Integer> dictionary, ITmfXyModel model) throws IOException {
+        writeString(out, dictionary, model.getTitle());
+        Collection<ISeriesModel> series = model.getSeriesData();
+        writeVarLong(out, series.size());
+        for (ISeriesModel serie : series) {
+            out.writeLong(serie.getId());
+            writeString(out, dictionary, serie.getName());
+            long[] xValues = serie.getXAxis();
+            double[] yValues = serie.getData();
+            int nbPoints = Math.min(xValues.length, yValues.length);
+            writeVarLong(out, nbPoints);
+            long previous = 0;
+            for (int i = 0; i < nbPoints; i++) {
+                writeZigZag(out, xValues[i] - previous);
+                previous = xValues[i];
+            }
+            for (int i = 0; i < nbPoints; i++) {
+                out.writeDouble(yValues[i]);
+            }
+        }
+    }
+
+    private static void writeTimeGraphModel(DataOutputStream out, Map<String, Integer> dictionary, TimeGraphModel model) throws IOException {
+        List<ITimeGraphRowModel> rows = model.getRows();
+        writeVarLong(out, rows.size());
+        for (ITimeGraphRowModel row : rows) {
+            out.writeLong(row.getEntryID());
+            List<ITimeGraphState> states = row.getStates();
+            writeVarLong(out, states.size());
+            long previousEnd = 0;
+            for (ITimeGraphState state : states) {
+                writeZigZag(out, state.getStartTime() - previousEnd);
+                writeVarLong(out, state.getDuration());
+                writeZigZag(out, state.getValue());
+                writeVarLong(out, state.getActiveProperties());
+                writeNullableString(out, dictionary, state.getLabel());
+                writeStyle(out, dictionary, state.getStyle());
+                previousEnd = state.getStartTime() + state.getDuration();
+            }
+        }
+    }
+
+    private static void writeStyle(DataOutputStream out, Map<String, Integer> dictionary, @Nullable OutputElementStyle style) throws IOException {
+        if (style == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        writeNullableString(out, dictionary, style.getParentKey());
+        Map<String, Object> values = style.getStyleValues();
+        writeVarLong(out, values.size());
+        for (Entry<String, Object> entry : values.entrySet()) {
+            writeString(out, dictionary, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Number) {
+                out.writeByte(1);
+                out.writeDouble(((Number) value).doubleValue());
+            } else {
+                out.writeByte(0);
+                writeString(out, dictionary, String.valueOf(value));
+            }
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, Map<String, Integer> dictionary, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        writeString(out, dictionary, value);
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> dictionary, String value) throws IOException {
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarLong(out, index);
+            return;
+        }
+        int newIndex = dictionary.size();
+        dictionary.put(value, newIndex);
+        writeVarLong(out, newIndex);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeZigZag(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+}
@@ -30,13 +30,32 @@ public class TraceServerConfiguration {
     private static final String PROPERTY_USESSL = "traceserver.useSSL"; //$NON-NLS-1$
     private static final String PROPERTY_KEYSTORE = "traceserver.keystore"; //$NON-NLS-1$
     private static final String PROPERTY_KEYSTORE_PASS = "traceserver.keystorepass"; //$NON-NLS-1$
+    private static final String PROPERTY_GZIP = "traceserver.gzip"; //$NON-NLS-1$
+    private static final String PROPERTY_MIN_THREADS = "traceserver.minThreads"; //$NON-NLS-1$
+    private static final String PROPERTY_MAX_THREADS = "traceserver.maxThreads"; //$NON-NLS-1$
+    private static final String PROPERTY_QUEUE_CAPACITY = "traceserver.queueCapacity"; //$NON-NLS-1$
+    private static final String PROPERTY_IDLE_TIMEOUT = "traceserver.idleTimeout"; //$NON-NLS-1$
     private static final int DEFAULT_HTTP_PORT = 8080;
     private static final int DEFAULT_SSL_PORT = 8443;
 
+    /** Default minimum number of threads, same as jetty's */
+    public static final int DEFAULT_MIN_THREADS = 8;
+    /** Default maximum number of threads, same as jetty's */
+    public static final int DEFAULT_MAX_THREADS = 200;
+    /** Default capacity of the request queue, a negative value means unbounded */
+    public static final int DEFAULT_QUEUE_CAPACITY = -1;
+    /** Default idle timeout of the threads, in milliseconds */
+    public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
     private final int fPort;
     private final boolean fUseSSL;
     private final @Nullable String fKeystore;
     private final @Nullable String fKeystorePass;
+    private final boolean fUseGzip;
+    private final int fMinThreads;
+    private final int fMaxThreads;
+    private final int fQueueCapacity;
+    private final int fIdleTimeout;
 
     /**
      * Create the trace server configuration
@@ -67,7 +86,43 @@ public class TraceServerConfiguration {
                 Activator.getInstance().logWarning(String.format("Invalid port specified: %s. Will use default port %d", portStr, port)); //$NON-NLS-1$
             }
         }
-        return new TraceServerConfiguration(port, useSSL, keystore, keystorePass);
+        String gzipStr = System.getProperty(PROPERTY_GZIP);
+        boolean useGzip = gzipStr == null || !"false".equals(gzipStr); //$NON-NLS-1$
+        int maxThreads = getIntProperty(PROPERTY_MAX_THREADS, DEFAULT_MAX_THREADS);
+        if (maxThreads < 1) {
+            Activator.getInstance().logWarning(String.format("Invalid maximum number of threads specified: %d. Will use default value %d", maxThreads, DEFAULT_MAX_THREADS)); //$NON-NLS-1$
+            maxThreads = DEFAULT_MAX_THREADS;
+        }
+        // The connector's acceptor and selector threads come from the pool, at least one more is needed to handle the requests
+        int requiredThreads = getAcceptors() + getSelectors() + 1;
+        if (maxThreads < requiredThreads) {
+            Activator.getInstance().logWarning(String.format("Maximum number of threads %d is lower than the %d threads required by the connector. Will use %d", maxThreads, requiredThreads, requiredThreads)); //$NON-NLS-1$
+            maxThreads = requiredThreads;
+        }
+        int minThreads = getIntProperty(PROPERTY_MIN_THREADS, Math.min(DEFAULT_MIN_THREADS, maxThreads));
+        if (minThreads < 1) {
+            Activator.getInstance().logWarning(String.format("Invalid minimum number of threads specified: %d. Will use default value %d", minThreads, Math.min(DEFAULT_MIN_THREADS, maxThreads))); //$NON-NLS-1$
+            minThreads = Math.min(DEFAULT_MIN_THREADS, maxThreads);
+        } else if (minThreads > maxThreads) {
+            Activator.getInstance().logWarning(String.format("Minimum number of threads %d is greater than the maximum %d. Will use %d", minThreads, maxThreads, maxThreads)); //$NON-NLS-1$
+            minThreads = maxThreads;
+        }
+        int queueCapacity = getIntProperty(PROPERTY_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+        int idleTimeout = getIntProperty(PROPERTY_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+        return new TraceServerConfiguration(port, useSSL, keystore, keystorePass, useGzip, minThreads, maxThreads, queueCapacity, idleTimeout);
+    }
+
+    private static int getIntProperty(String property, int defaultValue) {
+        String valueStr = System.getProperty(property);
+        if (valueStr == null || valueStr.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(valueStr);
+        } catch (NumberFormatException e) {
+            Activator.getInstance().logWarning(String.format("Invalid value specified for %s: %s. Will use default value %d", property, valueStr, defaultValue)); //$NON-NLS-1$
+            return defaultValue;
+        }
     }
 
     /**
@@ -85,10 +140,44 @@ public class TraceServerConfiguration {
      */
     @VisibleForTesting
     public TraceServerConfiguration(int port, boolean useSSL, @Nullable String keystore, @Nullable String keystorePass) {
+        this(port, useSSL, keystore, keystorePass, true, DEFAULT_MIN_THREADS, DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Constructor. Use only for unit tests, other use the {@link #create()} to
+     * automatically get the configuration parameters
+     *
+     * @param port
+     *            The port to use
+     * @param useSSL
+     *            Whether to use SSL
+     * @param keystore
+     *            The path to the SSL keystore
+     * @param keystorePass
+     *            The keystore password
+     * @param useGzip
+     *            Whether to compress the responses
+     * @param minThreads
+     *            The minimum number of threads of the server
+     * @param maxThreads
+     *            The maximum number of threads of the server
+     * @param queueCapacity
+     *            The capacity of the request queue, negative for unbounded
+     * @param idleTimeout
+     *            The idle timeout of the threads, in milliseconds
+     */
+    @VisibleForTesting
+    public TraceServerConfiguration(int port, boolean useSSL, @Nullable String keystore, @Nullable String keystorePass,
+            boolean useGzip, int minThreads, int maxThreads, int queueCapacity, int idleTimeout) {
         fPort = port;
         fUseSSL = useSSL;
         fKeystore = keystore;
         fKeystorePass = keystorePass;
+        fUseGzip = useGzip;
+        fMinThreads = minThreads;
+        fMaxThreads = maxThreads;
+        fQueueCapacity = queueCapacity;
+        fIdleTimeout = idleTimeout;
     }
 
     /**
@@ -132,4 +221,80 @@ public class TraceServerConfiguration {
         return fKeystorePass;
     }
 
+    /**
+     * Get whether the responses should be compressed with gzip, when the
+     * client accepts it. It can be disabled using the system property
+     * {@link #PROPERTY_GZIP}
+     *
+     * @return if <code>true</code>, the responses are compressed
+     */
+    public boolean useGzip() {
+        return fUseGzip;
+    }
+
+    /**
+     * Get the minimum number of threads of the server's thread pool. It can be
+     * specified using the system property {@link #PROPERTY_MIN_THREADS}
+     *
+     * @return The minimum number of threads
+     */
+    public int getMinThreads() {
+        return fMinThreads;
+    }
+
+    /**
+     * Get the maximum number of threads of the server's thread pool, ie the
+     * maximum number of requests handled concurrently. It can be specified
+     * using the system property {@link #PROPERTY_MAX_THREADS}
+     *
+     * @return The maximum number of threads
+     */
+    public int getMaxThreads() {
+        return fMaxThreads;
+    }
+
+    /**
+     * Get the number of acceptor threads of the server's connector, taken from
+     * the thread pool. It is computed from the number of processors, as jetty
+     * does by default.
+     *
+     * @return The number of acceptor threads
+     */
+    public static int getAcceptors() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 8));
+    }
+
+    /**
+     * Get the number of selector threads of the server's connector, taken from
+     * the thread pool. It is computed from the number of processors, as jetty
+     * does by default.
+     *
+     * @return The number of selector threads
+     */
+    public static int getSelectors() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Get the capacity of the queue of requests waiting for a thread. It can
+     * be specified using the system property {@link #PROPERTY_QUEUE_CAPACITY}
+     *
+     * @return The queue capacity, or a negative value if the queue is
+     *         unbounded
+     */
+    public int getQueueCapacity() {
+        return fQueueCapacity;
+    }
+
+    /**
+     * Get the time after which an idle thread above the minimum number of
+     * threads is stopped. It can be specified using the system property
+     * {@link #PROPERTY_IDLE_TIMEOUT}
+     *
+     * @return The idle timeout, in milliseconds
+     */
+    public int getIdleTimeout() {
+        return fIdleTimeout;
+    }
+
 }
@@ -10,19 +10,25 @@
  *******************************************************************************/
 package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderService;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.ExperimentManagerService;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.FilterService;
@@ -59,6 +65,7 @@ public class WebApplication {
 
     private static final String CONTEXT_PATH = "/tsp/api"; //$NON-NLS-1$
     private static final String PATH_SPEC = "/*"; //$NON-NLS-1$
+    private static final ObjectMapper OBJECT_MAPPER = createObjectMapper();
 
     private Server fServer;
     private final TraceServerConfiguration fConfig;
@@ -98,19 +105,28 @@ public class WebApplication {
         rc.register(FilterService.class);
         rc.register(XmlManagerService.class);
         rc.register(CORSFilter.class);
+        rc.register(BinaryModelWriter.class);
         rc.register(registerCustomMappers());
 
         ServletContainer sc = new ServletContainer(rc);
         ServletHolder holder = new ServletHolder(sc);
         sch.addServlet(holder, PATH_SPEC);
 
-        fServer = new Server();
+        fServer = new Server(getThreadPool(fConfig));
         // https://www.programcreek.com/java-api-examples/?api=org.eclipse.jetty.server.SslConnectionFactory
 
         @SuppressWarnings("resource")
         ServerConnector connector = getConnector(fServer, fConfig);
         fServer.addConnector(connector);
-        fServer.setHandler(sch);
+        if (fConfig.useGzip()) {
+            GzipHandler gzipHandler = new GzipHandler();
+            // Data provider queries are POST requests
+            gzipHandler.setIncludedMethods(HttpMethod.GET.asString(), HttpMethod.POST.asString());
+            gzipHandler.setHandler(sch);
+            fServer.setHandler(gzipHandler);
+        } else {
+            fServer.setHandler(sch);
+        }
 
         // create and open a default eclipse project.
         IProject project = ResourcesPlugin.getWorkspace().getRoot()
@@ -139,6 +155,12 @@ public class WebApplication {
         }
     }
 
+    private static QueuedThreadPool getThreadPool(TraceServerConfiguration config) {
+        int queueCapacity = config.getQueueCapacity();
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+        return new QueuedThreadPool(config.getMaxThreads(), config.getMinThreads(), config.getIdleTimeout(), queue);
+    }
+
     private static ServerConnector getConnector(Server server, TraceServerConfiguration config) {
         ServerConnector serverConnector = null;
         if (config.useSSL()) {
@@ -157,20 +179,34 @@ public class WebApplication {
             httpsConfig.setSendDateHeader(false);
 
             SslConnectionFactory connector = new SslConnectionFactory(contextFactory, HttpVersion.HTTP_1_1.asString());
-            serverConnector = new ServerConnector(server, connector, new HttpConnectionFactory(httpsConfig));
+            serverConnector = new ServerConnector(server, TraceServerConfiguration.getAcceptors(), TraceServerConfiguration.getSelectors(), connector, new HttpConnectionFactory(httpsConfig));
         } else {
-            serverConnector = new ServerConnector(server);
+            serverConnector = new ServerConnector(server, TraceServerConfiguration.getAcceptors(), TraceServerConfiguration.getSelectors());
         }
         serverConnector.setPort(config.getPort());
         return serverConnector;
     }
 
     private static JacksonJaxbJsonProvider registerCustomMappers() {
-        ObjectMapper mapper = new ObjectMapper();
-
         // create JsonProvider to provide custom ObjectMapper
         JacksonJaxbJsonProvider provider = new JacksonJaxbJsonProvider();
-        provider.setMapper(mapper);
+        provider.setMapper(OBJECT_MAPPER);
+        return provider;
+    }
+
+    /**
+     * Get the {@link ObjectMapper} with the custom serializers of the trace
+     * server, for services that write their responses directly to the output
+     * stream
+     *
+     * @return The object mapper
+     */
+    public static ObjectMapper getObjectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    private static ObjectMapper createObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
 
         SimpleModule module = new SimpleModule();
         module.addSerializer(ITmfTrace.class, new TraceSerializer());
@@ -185,7 +221,7 @@ public class WebApplication {
         module.addSerializer(OutputElementStyle.class, new OutputElementStyleSerializer());
         module.addSerializer(IVirtualTableLine.class, new VirtualTableLineSerializer());
         mapper.registerModule(module);
-        return provider;
+        return mapper;
     }
 
     /**
@@ -74,6 +74,15 @@ public class PerfCallchainAnalysisModule extends ProfilingCallGraphAnalysisModul
 
     @Override
     protected @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(@NonNull ITmfEvent event) {
+        Pair<ICallStackElement, long[]> stack = getProfiledStack(event);
+        if (stack == null || stack.getSecond().length == 0) {
+            return null;
+        }
+        return new Pair<>(stack.getFirst(), getCallSite(stack.getFirst(), stack.getSecond(), event.getTimestamp().getValue()));
+    }
+
+    @Override
+    protected @Nullable Pair<ICallStackElement, long[]> getProfiledStack(@NonNull ITmfEvent event) {
         if (!event.getName().startsWith(EVENT_SAMPLING)) {
             return null;
         }
@@ -84,15 +93,13 @@ public class PerfCallchainAnalysisModule extends ProfilingCallGraphAnalysisModul
         }
         long[] value = (long[]) field.getValue();
         int size = value.length;
-        long tmp;
-        // Reverse the stack so that element at position 0 is the bottom
-        for (int i = 0, mid = size >> 1, j = size - 1; i < mid; i++, j--) {
-            tmp = value[i];
-            value[i] = value[j];
-            value[j] = tmp;
+        // Reverse the stack so that element at position 0 is the bottom, in a
+        // copy to leave the event field untouched
+        long[] stack = new long[size];
+        for (int i = 0; i < size; i++) {
+            stack[i] = value[size - 1 - i];
         }
-        ICallStackElement element = getElement(event);
-        return new Pair<>(element, getCallSite(element, value, event.getTimestamp().getValue()));
+        return new Pair<>(getElement(event), stack);
     }
 
     /**